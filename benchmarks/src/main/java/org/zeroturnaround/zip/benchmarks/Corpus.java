@@ -0,0 +1,155 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.zeroturnaround.zip.NameMapper;
+import org.zeroturnaround.zip.ZipUtil;
+import org.zeroturnaround.zip.commons.FileUtils;
+
+/**
+ * Generated input data of the benchmarks. The contents only depend on the name of the corpus,
+ * so the results of different runs are comparable.
+ */
+public final class Corpus {
+
+  /** 5000 files of 1 KB of text in 50 directories. */
+  public static final String SMALL_TEXT = "small-text";
+
+  /** 5000 files of 1 KB of random data in 50 directories. */
+  public static final String SMALL_RANDOM = "small-random";
+
+  /** 4 files of 32 MB of text. */
+  public static final String HUGE_TEXT = "huge-text";
+
+  /** 4 files of 32 MB of random data. */
+  public static final String HUGE_RANDOM = "huge-random";
+
+  /** 2000 files of 4 KB of text, 25 directories deep. */
+  public static final String DEEP_TREE = "deep-tree";
+
+  /** Keeps the entry names as they are. */
+  public static final NameMapper IDENTITY = new NameMapper() {
+    public String map(String name) {
+      return name;
+    }
+  };
+
+  private static final int KB = 1024;
+
+  private static final int MB = 1024 * KB;
+
+  private static final String[] WORDS = { "zip", "entry", "archive", "deflate", "stored", "central",
+      "directory", "header", "turnaround", "stream", "buffer", "file", "name", "mapper", "transform" };
+
+  private Corpus() {
+  }
+
+  /**
+   * Creates the files of the given corpus.
+   *
+   * @param name one of the corpus names of this class.
+   * @return a new temporary directory with the files.
+   */
+  public static File createDirectory(String name) throws IOException {
+    File dir = createTempDir(name);
+    Random random = new Random(name.hashCode());
+    if (SMALL_TEXT.equals(name) || SMALL_RANDOM.equals(name)) {
+      boolean text = SMALL_TEXT.equals(name);
+      for (int i = 0; i < 5000; i++) {
+        write(new File(dir, "dir" + (i % 50) + "/file" + i + ".dat"), KB, text, random);
+      }
+    }
+    else if (HUGE_TEXT.equals(name) || HUGE_RANDOM.equals(name)) {
+      boolean text = HUGE_TEXT.equals(name);
+      for (int i = 0; i < 4; i++) {
+        write(new File(dir, "file" + i + ".dat"), 32 * MB, text, random);
+      }
+    }
+    else if (DEEP_TREE.equals(name)) {
+      for (int i = 0; i < 2000; i++) {
+        StringBuilder path = new StringBuilder();
+        for (int depth = 0; depth < 25; depth++) {
+          path.append("level").append(depth).append('-').append((i >> (depth % 8)) % 3).append('/');
+        }
+        path.append("file").append(i).append(".txt");
+        write(new File(dir, path.toString()), 4 * KB, true, random);
+      }
+    }
+    else {
+      throw new IllegalArgumentException("Unknown corpus: " + name);
+    }
+    return dir;
+  }
+
+  /**
+   * Creates a ZIP file with the files of the given corpus.
+   *
+   * @param name one of the corpus names of this class.
+   * @return a new temporary ZIP file.
+   */
+  public static File createZip(String name) throws IOException {
+    File dir = createDirectory(name);
+    try {
+      File zip = File.createTempFile("corpus-" + name, ".zip");
+      ZipUtil.pack(dir, zip);
+      return zip;
+    }
+    finally {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  /**
+   * @return a new empty temporary directory.
+   */
+  public static File createTempDir(String prefix) throws IOException {
+    File dir = File.createTempFile(prefix, null);
+    FileUtils.forceDelete(dir);
+    FileUtils.forceMkdir(dir);
+    return dir;
+  }
+
+  private static void write(File file, int size, boolean text, Random random) throws IOException {
+    FileUtils.forceMkdir(file.getParentFile());
+    byte[] data = new byte[size];
+    if (text) {
+      int pos = 0;
+      while (pos < size) {
+        byte[] word = (WORDS[random.nextInt(WORDS.length)] + (random.nextInt(10) == 0 ? "\n" : " ")).getBytes("US-ASCII");
+        int n = Math.min(word.length, size - pos);
+        System.arraycopy(word, 0, data, pos, n);
+        pos += n;
+      }
+    }
+    else {
+      random.nextBytes(data);
+    }
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeroturnaround.zip.ByteSource;
+import org.zeroturnaround.zip.ZipEntrySource;
+import org.zeroturnaround.zip.ZipInfoCallback;
+import org.zeroturnaround.zip.ZipUtil;
+import org.zeroturnaround.zip.Zips;
+import org.zeroturnaround.zip.commons.FileUtils;
+
+/**
+ * Adds, replaces and removes a few entries of a ZIP file, writing the result into another file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EditBenchmark {
+
+  @Param({ Corpus.SMALL_TEXT, Corpus.SMALL_RANDOM, Corpus.HUGE_TEXT, Corpus.HUGE_RANDOM, Corpus.DEEP_TREE })
+  public String corpus;
+
+  private File zip;
+
+  private File dest;
+
+  private ZipEntrySource[] entries;
+
+  private String[] removed;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    zip = Corpus.createZip(corpus);
+    dest = File.createTempFile("edit", ".zip");
+
+    final String[] names = new String[2];
+    ZipUtil.iterate(zip, new ZipInfoCallback() {
+      private int count;
+
+      public void process(ZipEntry zipEntry) {
+        if (!zipEntry.isDirectory() && count < names.length) {
+          names[count++] = zipEntry.getName();
+        }
+      }
+    });
+    entries = new ZipEntrySource[] {
+        new ByteSource(names[0], "replaced".getBytes("US-ASCII")),
+        new ByteSource("added/new-entry.txt", "added".getBytes("US-ASCII")) };
+    removed = new String[] { names[1] };
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtils.deleteQuietly(zip);
+    FileUtils.deleteQuietly(dest);
+  }
+
+  @Benchmark
+  public long addOrReplaceEntries() {
+    ZipUtil.addOrReplaceEntries(zip, entries, dest);
+    return dest.length();
+  }
+
+  @Benchmark
+  public long removeEntries() {
+    ZipUtil.removeEntries(zip, removed, dest);
+    return dest.length();
+  }
+
+  @Benchmark
+  public long zipsProcess() {
+    Zips.get(zip).addEntries(entries).removeEntries(removed).destination(dest).process();
+    return dest.length();
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zeroturnaround.zip.ZipEntryCallback;
+import org.zeroturnaround.zip.ZipInfoCallback;
+import org.zeroturnaround.zip.ZipReaderBackend;
+import org.zeroturnaround.zip.ZipUtil;
+import org.zeroturnaround.zip.commons.FileUtils;
+
+/**
+ * Iterates over the entries of a ZIP file with each reader backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IterateBenchmark {
+
+  @Param({ Corpus.SMALL_TEXT, Corpus.SMALL_RANDOM, Corpus.HUGE_TEXT, Corpus.HUGE_RANDOM, Corpus.DEEP_TREE })
+  public String corpus;
+
+  @Param({ "ZIP_FILE", "MAPPED" })
+  public ZipReaderBackend backend;
+
+  private File zip;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    zip = Corpus.createZip(corpus);
+    ZipReaderBackend.setDefault(backend);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    ZipReaderBackend.setDefault(null);
+    FileUtils.deleteQuietly(zip);
+  }
+
+  @Benchmark
+  public void iterateContents(final Blackhole blackhole) {
+    final byte[] buffer = new byte[64 * 1024];
+    ZipUtil.iterate(zip, new ZipEntryCallback() {
+      public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+          blackhole.consume(n);
+        }
+      }
+    });
+  }
+
+  @Benchmark
+  public void iterateInfo(final Blackhole blackhole) {
+    ZipUtil.iterate(zip, new ZipInfoCallback() {
+      public void process(ZipEntry zipEntry) throws IOException {
+        blackhole.consume(zipEntry.getCrc());
+      }
+    });
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeroturnaround.zip.ZipUtil;
+import org.zeroturnaround.zip.commons.FileUtils;
+
+/**
+ * Unpacks a ZIP file into a directory, the directory is removed before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UnpackBenchmark {
+
+  @Param({ Corpus.SMALL_TEXT, Corpus.SMALL_RANDOM, Corpus.HUGE_TEXT, Corpus.HUGE_RANDOM, Corpus.DEEP_TREE })
+  public String corpus;
+
+  private File zip;
+
+  private File dir;
+
+  private ExecutorService executor;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    zip = Corpus.createZip(corpus);
+    dir = Corpus.createTempDir("unpack");
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @Setup(Level.Invocation)
+  public void cleanDirectory() throws IOException {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdown();
+    FileUtils.deleteQuietly(dir);
+    FileUtils.deleteQuietly(zip);
+  }
+
+  @Benchmark
+  public File unpack() {
+    ZipUtil.unpack(zip, dir);
+    return dir;
+  }
+
+  @Benchmark
+  public File unpackWithExecutor() {
+    ZipUtil.unpack(zip, dir, Corpus.IDENTITY, executor);
+    return dir;
+  }
+
+}
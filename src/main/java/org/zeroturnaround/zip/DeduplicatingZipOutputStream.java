@@ -0,0 +1,179 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * ZIP output stream which compresses files with the same contents only once.
+ * <p>
+ * The contents of each file given to {@link #putFile(ZipEntry, File)} are hashed while they are
+ * deflated. If a later file has the same length and hash, its entry gets a copy of the already
+ * deflated data (and CRC), which is read back from the ZIP file being written. Files are hashed
+ * before deflating only if an earlier file had the same length, so unique files are read once.
+ */
+class DeduplicatingZipOutputStream extends ZipRawCopyOutputStream {
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  private final File file;
+
+  /**
+   * Deflated files by their uncompressed size.
+   */
+  private final Map<Long, List<Blob>> blobsBySize = new HashMap<Long, List<Blob>>();
+
+  /**
+   * Reads back the deflated data of the file being written, opened on the first duplicate.
+   */
+  private RandomAccessFile reader;
+
+  /**
+   * @param file ZIP file to be created or overwritten.
+   */
+  DeduplicatingZipOutputStream(File file) throws IOException {
+    super(new BufferedOutputStream(new FileOutputStream(file)));
+    this.file = file;
+  }
+
+  void putFile(ZipEntry entry, File source) throws IOException {
+    long length = entry.getSize() == -1 ? source.length() : entry.getSize();
+    List<Blob> candidates = blobsBySize.get(length);
+    byte[] digest = null;
+    if (candidates != null) {
+      digest = digest(source);
+      for (Blob blob : candidates) {
+        if (Arrays.equals(blob.digest, digest)) {
+          copyBlob(entry, blob);
+          return;
+        }
+      }
+    }
+
+    MessageDigest md = digest == null ? newDigest() : null;
+    InputStream in = new FileInputStream(source);
+    try {
+      putNextEntry(entry);
+      long dataOffset = getPosition();
+      IOUtils.copy(md == null ? in : new DigestInputStream(in, md), this);
+      closeEntry();
+
+      if (entry.getMethod() == DEFLATED && entry.getSize() > 0
+          && entry.getCompressedSize() < ZipRawFile.ZIP64_MAGIC && entry.getSize() < ZipRawFile.ZIP64_MAGIC) {
+        Blob blob = new Blob(md == null ? digest : md.digest(), dataOffset, entry);
+        List<Blob> sameSize = blobsBySize.get(blob.size);
+        if (sameSize == null) {
+          sameSize = new ArrayList<Blob>(1);
+          blobsBySize.put(blob.size, sameSize);
+        }
+        sameSize.add(blob);
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  public void close() throws IOException {
+    try {
+      super.close();
+    }
+    finally {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+  }
+
+  private void copyBlob(ZipEntry entry, Blob blob) throws IOException {
+    // the deflated data must be in the file before it can be read back
+    flush();
+    if (reader == null) {
+      reader = new RandomAccessFile(file, "r");
+    }
+    InputStream in = new ZipRawFile.ChannelInputStream(reader.getChannel(), file, blob.dataOffset, blob.compressedSize);
+    putDeflatedEntry(entry, blob.crc, blob.compressedSize, blob.size, in);
+  }
+
+  private static byte[] digest(File source) throws IOException {
+    MessageDigest md = newDigest();
+    InputStream in = new FileInputStream(source);
+    byte[] buffer = IOUtils.acquireCopyBuffer();
+    try {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        md.update(buffer, 0, n);
+      }
+    }
+    finally {
+      IOUtils.releaseCopyBuffer(buffer);
+      IOUtils.closeQuietly(in);
+    }
+    return md.digest();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new ZipException("Digest algorithm " + DIGEST_ALGORITHM + " is not available", e);
+    }
+  }
+
+  /**
+   * Deflated contents of a file written.
+   */
+  private static class Blob {
+
+    private final byte[] digest;
+
+    private final long dataOffset;
+
+    private final long crc;
+
+    private final long compressedSize;
+
+    private final long size;
+
+    Blob(byte[] digest, long dataOffset, ZipEntry entry) {
+      this.digest = digest;
+      this.dataOffset = dataOffset;
+      this.crc = entry.getCrc();
+      this.compressedSize = entry.getCompressedSize();
+      this.size = entry.getSize();
+    }
+
+  }
+
+}
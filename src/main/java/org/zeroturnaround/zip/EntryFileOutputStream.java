@@ -0,0 +1,111 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP output stream which writes the uncompressed contents of its first entry directly into the
+ * given stream, e.g. a file. No headers are written and nothing is compressed.
+ * <p>
+ * It lets a {@link org.zeroturnaround.zip.transform.ZipEntryTransformer} write a single file
+ * without an intermediate ZIP archive. The contents of any further entries are discarded.
+ */
+class EntryFileOutputStream extends ZipOutputStream {
+
+  private final OutputStream target;
+
+  /**
+   * Whether an entry has been started.
+   */
+  private boolean started;
+
+  /**
+   * Whether the data written belongs to the first entry.
+   */
+  private boolean writing;
+
+  private boolean closed;
+
+  /**
+   * @param target stream of the file contents, it is closed by this stream.
+   */
+  EntryFileOutputStream(OutputStream target) {
+    super(target);
+    this.target = target;
+    // the deflater allocated by ZipOutputStream is never used
+    def.end();
+  }
+
+  public void setLevel(int level) {
+    if ((level < 0 || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("invalid compression level");
+    }
+  }
+
+  public void putNextEntry(ZipEntry e) throws IOException {
+    ensureOpen();
+    writing = !started;
+    started = true;
+  }
+
+  public void closeEntry() throws IOException {
+    ensureOpen();
+    writing = false;
+  }
+
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (!started) {
+      throw new java.util.zip.ZipException("no current ZIP entry");
+    }
+    if (writing) {
+      target.write(b, off, len);
+    }
+  }
+
+  public void flush() throws IOException {
+    target.flush();
+  }
+
+  public void finish() throws IOException {
+    ensureOpen();
+    writing = false;
+    target.flush();
+  }
+
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      target.close();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+}
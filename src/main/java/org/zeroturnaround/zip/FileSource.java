@@ -31,10 +31,19 @@ public class FileSource implements ZipEntrySource {
 
   private final String path;
   private final File file;
+  private final ZTFileAttributes attributes;
 
   public FileSource(String path, File file) {
+    this(path, file, null);
+  }
+
+  /**
+   * @param attributes already read attributes of the file, <code>null</code> to read them when the entry is created.
+   */
+  FileSource(String path, File file, ZTFileAttributes attributes) {
     this.path = path;
     this.file = file;
+    this.attributes = attributes;
   }
 
   public String getPath() {
@@ -42,12 +51,12 @@ public class FileSource implements ZipEntrySource {
   }
 
   public ZipEntry getEntry() {
-    ZipEntry entry = ZipEntryUtil.fromFile(path, file);
+    ZipEntry entry = attributes == null ? ZipEntryUtil.fromFile(path, file) : ZipEntryUtil.fromFile(path, attributes);
     return entry;
   }
 
   public InputStream getInputStream() throws IOException {
-    if (file.isDirectory()) {
+    if (attributes == null ? file.isDirectory() : attributes.isDirectory()) {
       return null;
     }
     else {
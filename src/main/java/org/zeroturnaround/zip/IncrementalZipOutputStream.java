@@ -0,0 +1,76 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+
+/**
+ * ZIP output stream which copies the compressed data of unchanged files from a previous
+ * archive of the same files.
+ * <p>
+ * A file given to {@link #putFile(ZipEntry, File)} is considered unchanged if the previous archive
+ * has a deflated entry with the same name, size, modification time (with the two second precision
+ * of ZIP files) and extra data (e.g. permissions). Such an entry is copied as is, other files
+ * are compressed as usual.
+ */
+class IncrementalZipOutputStream extends ZipRawCopyOutputStream {
+
+  private static final byte[] NO_EXTRA = new byte[0];
+
+  private final ZipRawFile previous;
+
+  private int copied;
+
+  /**
+   * @param out target stream.
+   * @param previous open previous archive, it is not closed by this stream.
+   */
+  IncrementalZipOutputStream(OutputStream out, ZipRawFile previous) {
+    super(out);
+    this.previous = previous;
+  }
+
+  void putFile(ZipEntry entry, File source) throws IOException {
+    ZipRawEntry old = previous.getEntry(entry.getName());
+    if (old != null && isUnchanged(old, entry)) {
+      copyRawEntry(old, -1);
+      copied++;
+    }
+    else {
+      super.putFile(entry, source);
+    }
+  }
+
+  /**
+   * @return number of entries copied from the previous archive.
+   */
+  int getCopiedEntries() {
+    return copied;
+  }
+
+  private static boolean isUnchanged(ZipRawEntry old, ZipEntry entry) {
+    byte[] extra = entry.getExtra() == null ? NO_EXTRA : entry.getExtra();
+    return old.getRawMethod() == ZipEntry.DEFLATED
+        && old.getRawSize() == entry.getSize()
+        && old.getDosTime() == ZipRawFile.javaToDosTime(entry.getTime())
+        && Arrays.equals(old.getCentralExtra(), extra);
+  }
+
+}
@@ -3,11 +3,15 @@ package org.zeroturnaround.zip;
 import java.io.File;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
  * ZTFilePermissionsStrategy which uses Java 7 posix file permissions
+ * <p>
+ * The NIO.2 API is called through cached reflective methods, as the library targets Java 5.
+ * The permission sets given to the file system are cached per mode.
  * 
  * @author VIktor Karabut
  */
@@ -21,6 +25,20 @@ class Java7Nio2ApiPermissionsStrategy implements ZTFilePermissionsStrategy {
   private final Method toPathMethod;
   private final Method setPosixFilePermissionsMethod;
   private final Method getPosixFilePermissionsMethod;
+  private final Method readAttributesMethod;
+
+  private final Class<?> posixFileAttributesClass;
+  private final Method permissionsMethod;
+  private final Method isDirectoryMethod;
+  private final Method isSymbolicLinkMethod;
+  private final Method sizeMethod;
+  private final Method lastModifiedTimeMethod;
+  private final Method toMillisMethod;
+
+  /**
+   * Unmodifiable sets of PosixFilePermissions by POSIX mode, created on demand.
+   */
+  private final Object[] permissionSets = new Object[01000];
   
   private final Object OWNER_READ;
   private final Object OWNER_WRITE;
@@ -63,45 +81,94 @@ class Java7Nio2ApiPermissionsStrategy implements ZTFilePermissionsStrategy {
     toPathMethod = ZTZipReflectionUtil.getDeclaredMethod(File.class, "toPath");
     setPosixFilePermissionsMethod = ZTZipReflectionUtil.getDeclaredMethod(filesClass, "setPosixFilePermissions", pathClass, Set.class);
     getPosixFilePermissionsMethod = ZTZipReflectionUtil.getDeclaredMethod(filesClass, "getPosixFilePermissions", pathClass, linkOptionsArray.getClass());
+    readAttributesMethod = ZTZipReflectionUtil.getDeclaredMethod(filesClass, "readAttributes", pathClass, Class.class, linkOptionsArray.getClass());
+
+    posixFileAttributesClass = ZTZipReflectionUtil.getClassForName("java.nio.file.attribute.PosixFileAttributes", Object.class);
+    Class<?> basicFileAttributesClass = ZTZipReflectionUtil.getClassForName("java.nio.file.attribute.BasicFileAttributes", Object.class);
+    Class<?> fileTimeClass = ZTZipReflectionUtil.getClassForName("java.nio.file.attribute.FileTime", Object.class);
+    permissionsMethod = ZTZipReflectionUtil.getDeclaredMethod(posixFileAttributesClass, "permissions");
+    isDirectoryMethod = ZTZipReflectionUtil.getDeclaredMethod(basicFileAttributesClass, "isDirectory");
+    isSymbolicLinkMethod = ZTZipReflectionUtil.getDeclaredMethod(basicFileAttributesClass, "isSymbolicLink");
+    sizeMethod = ZTZipReflectionUtil.getDeclaredMethod(basicFileAttributesClass, "size");
+    lastModifiedTimeMethod = ZTZipReflectionUtil.getDeclaredMethod(basicFileAttributesClass, "lastModifiedTime");
+    toMillisMethod = ZTZipReflectionUtil.getDeclaredMethod(fileTimeClass, "toMillis");
   }
 
   public ZTFilePermissions getPermissions(File file) {
-    ZTFilePermissions permissions = new ZTFilePermissions();
+    ZTFilePermissions permissions = ZTFilePermissionsUtil.fromPosixFileMode(toPosixFileMode(getPosixFilePermissions(file)));
     permissions.setDirectory(file.isDirectory());
-    
-    Set<?> posixFilePermissions = getPosixFilePermissions(file);
-    
-    permissions.setOwnerCanRead(   posixFilePermissions.contains(OWNER_READ));
-    permissions.setOwnerCanWrite(  posixFilePermissions.contains(OWNER_WRITE));
-    permissions.setOwnerCanExecute(posixFilePermissions.contains(OWNER_EXECUTE));
-    
-    permissions.setGroupCanRead(   posixFilePermissions.contains(GROUP_READ));
-    permissions.setGroupCanWrite(  posixFilePermissions.contains(GROUP_WRITE));
-    permissions.setGroupCanExecute(posixFilePermissions.contains(GROUP_EXECUTE));
-    
-    permissions.setOthersCanRead(   posixFilePermissions.contains(OTHERS_READ));
-    permissions.setOthersCanWrite(  posixFilePermissions.contains(OTHERS_WRITE));
-    permissions.setOthersCanExecute(posixFilePermissions.contains(OTHERS_EXECUTE));
-    
     return permissions;
   }
 
+  /**
+   * Reads all the attributes of the given file with a single call to the file system. If the file
+   * has no <code>java.nio.file.Path</code>, they are read with java.io like before.
+   * 
+   * @param file file to read the attributes of
+   * @return attributes of the file
+   */
+  ZTFileAttributes readAttributes(File file) {
+    Object attributes;
+    try {
+      // Files.readAttributes(file.toPath(), PosixFileAttributes.class, new LinkOption[]{ LinkOption.NOFOLLOW_LINKS });
+      attributes = ZTZipReflectionUtil.invoke(readAttributesMethod, null, toPath(file), posixFileAttributesClass, linkOptionsArray);
+    }
+    catch (ZipException e) {
+      // e.g. the name can't be encoded in the platform charset, which java.io handles
+      return new ZTFileAttributes(file);
+    }
+    if ((Boolean) ZTZipReflectionUtil.invoke(isSymbolicLinkMethod, attributes)) {
+      // the size, time and type are those of the link target
+      return new ZTFileAttributes(file.isDirectory(), file.length(), file.lastModified(), getPermissions(file));
+    }
+    boolean directory = (Boolean) ZTZipReflectionUtil.invoke(isDirectoryMethod, attributes);
+    long size = (Long) ZTZipReflectionUtil.invoke(sizeMethod, attributes);
+    Object lastModifiedTime = ZTZipReflectionUtil.invoke(lastModifiedTimeMethod, attributes);
+    long lastModified = (Long) ZTZipReflectionUtil.invoke(toMillisMethod, lastModifiedTime);
+
+    ZTFilePermissions permissions = ZTFilePermissionsUtil.fromPosixFileMode(
+        toPosixFileMode((Set<?>) ZTZipReflectionUtil.invoke(permissionsMethod, attributes)));
+    permissions.setDirectory(directory);
+    return new ZTFileAttributes(directory, size, lastModified, permissions);
+  }
+
   public void setPermissions(File file, ZTFilePermissions permissions) {
-    Set<Object> set = new HashSet<Object>();
-    addIf(permissions.isOwnerCanRead(), set, OWNER_READ);
-    addIf(permissions.isOwnerCanRead(),   set,OWNER_READ);
-    addIf(permissions.isOwnerCanWrite(),  set,OWNER_WRITE);
-    addIf(permissions.isOwnerCanExecute(),set,OWNER_EXECUTE);
-    
-    addIf(permissions.isGroupCanRead(),   set,GROUP_READ);
-    addIf(permissions.isGroupCanWrite(),  set,GROUP_WRITE);
-    addIf(permissions.isGroupCanExecute(),set,GROUP_EXECUTE);
-    
-    addIf(permissions.isOthersCanRead(),   set,OTHERS_READ);
-    addIf(permissions.isOthersCanWrite(),  set,OTHERS_WRITE);
-    addIf(permissions.isOthersCanExecute(),set,OTHERS_EXECUTE);
-    
-    setPosixFilePermissions(file, set);
+    setPosixFilePermissions(file, getPermissionSet(ZTFilePermissionsUtil.toPosixFileMode(permissions)));
+  }
+
+  /**
+   * PosixFilePermission constants are declared in the order of the mode bits, from OWNER_READ (0400)
+   * to OTHERS_EXECUTE (0001).
+   */
+  private static int toPosixFileMode(Set<?> posixFilePermissions) {
+    int mode = 0;
+    for (Object permission : posixFilePermissions) {
+      mode |= 0400 >> ((Enum<?>) permission).ordinal();
+    }
+    return mode;
+  }
+
+  private Set<?> getPermissionSet(int mode) {
+    Set<?> result = (Set<?>) permissionSets[mode];
+    if (result == null) {
+      Set<Object> set = new HashSet<Object>();
+      addIf((mode & 0400) != 0, set, OWNER_READ);
+      addIf((mode & 0200) != 0, set, OWNER_WRITE);
+      addIf((mode & 0100) != 0, set, OWNER_EXECUTE);
+
+      addIf((mode & 0040) != 0, set, GROUP_READ);
+      addIf((mode & 0020) != 0, set, GROUP_WRITE);
+      addIf((mode & 0010) != 0, set, GROUP_EXECUTE);
+
+      addIf((mode & 0004) != 0, set, OTHERS_READ);
+      addIf((mode & 0002) != 0, set, OTHERS_WRITE);
+      addIf((mode & 0001) != 0, set, OTHERS_EXECUTE);
+
+      // the unmodifiable wrapper is safely published to other threads
+      result = Collections.unmodifiableSet(set);
+      permissionSets[mode] = result;
+    }
+    return result;
   }
   
   private <E> void addIf(boolean condition, Set<E> set, E el) {
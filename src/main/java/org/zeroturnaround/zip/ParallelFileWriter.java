@@ -0,0 +1,191 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * Writes entry contents into files using an executor.
+ * <p>
+ * The number of files being written or waiting for a thread is limited, so
+ * {@link #write(InputStream, File, ZTFilePermissions)} blocks when too many files are pending.
+ * The parent directories of the files must exist already.
+ */
+class ParallelFileWriter {
+
+  private final ExecutorService executor;
+
+  private final int maxPending;
+
+  private final LinkedList<PendingFile> pending = new LinkedList<PendingFile>();
+
+  ParallelFileWriter(ExecutorService executor) {
+    this(executor, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  ParallelFileWriter(ExecutorService executor, int maxPending) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor must be given");
+    }
+    this.executor = executor;
+    this.maxPending = Math.max(1, maxPending);
+  }
+
+  /**
+   * Copies the given stream into a file in the background and closes the stream.
+   *
+   * @param in
+   *          contents of the file, read by the executor.
+   * @param file
+   *          target file.
+   * @param permissions
+   *          permissions to set after the file is written, may be <code>null</code>.
+   */
+  void write(final InputStream in, final File file, final ZTFilePermissions permissions) throws IOException {
+    submit(new Callable<Object>() {
+      public Object call() throws IOException {
+        try {
+          FileUtils.copy(in, file);
+        }
+        finally {
+          IOUtils.closeQuietly(in);
+        }
+        if (permissions != null) {
+          ZTFilePermissionsUtil.getDefaultStategy().setPermissions(file, permissions);
+        }
+        return null;
+      }
+    }, in);
+  }
+
+  /**
+   * Copies a stored entry directly into a file in the background.
+   *
+   * @param entry
+   *          stored entry, its ZIP file must be kept open until the files are written.
+   * @param file
+   *          target file.
+   * @param permissions
+   *          permissions to set after the file is written, may be <code>null</code>.
+   * @param verifyCrc
+   *          <code>true</code> if the CRC of the entry should be checked.
+   *
+   * @see ZipRawFile#transferTo(ZipRawEntry, File, boolean)
+   */
+  void transfer(final ZipRawEntry entry, final File file, final ZTFilePermissions permissions, final boolean verifyCrc) throws IOException {
+    submit(new Callable<Object>() {
+      public Object call() throws IOException {
+        entry.getZipFile().transferTo(entry, file, verifyCrc);
+        if (permissions != null) {
+          ZTFilePermissionsUtil.getDefaultStategy().setPermissions(file, permissions);
+        }
+        return null;
+      }
+    }, null);
+  }
+
+  /**
+   * @param in
+   *          stream closed by the task, it's closed here if the task is cancelled (may be <code>null</code>).
+   */
+  private void submit(Callable<Object> task, InputStream in) throws IOException {
+    while (pending.size() >= maxPending) {
+      waitFor(pending.removeFirst());
+    }
+    pending.add(new PendingFile(executor.submit(task), in));
+  }
+
+  /**
+   * Waits until all the files are written.
+   *
+   * @throws IOException
+   *           first error that occurred while writing.
+   */
+  void await() throws IOException {
+    while (!pending.isEmpty()) {
+      waitFor(pending.removeFirst());
+    }
+  }
+
+  /**
+   * Cancels writing the files not started yet and waits for the others to finish.
+   */
+  void cancel() {
+    for (PendingFile file : pending) {
+      if (file.future.cancel(false)) {
+        // the task is not run, so it doesn't close the stream
+        IOUtils.closeQuietly(file.in);
+      }
+    }
+    while (!pending.isEmpty()) {
+      try {
+        pending.removeFirst().future.get();
+      }
+      catch (Exception e) {
+        // already reported or cancelled
+      }
+    }
+  }
+
+  private void waitFor(PendingFile file) throws IOException {
+    try {
+      file.future.get();
+    }
+    catch (InterruptedException e) {
+      cancel();
+      Thread.currentThread().interrupt();
+      throw new ZipException("Interrupted while writing files", e);
+    }
+    catch (ExecutionException e) {
+      cancel();
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ZipException("Failed to write file", cause);
+    }
+  }
+
+  private static class PendingFile {
+
+    private final Future<Object> future;
+
+    private final InputStream in;
+
+    PendingFile(Future<Object> future, InputStream in) {
+      this.future = future;
+      this.in = in;
+    }
+
+  }
+
+}
@@ -0,0 +1,313 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * ZIP output stream which compresses submitted entries concurrently.
+ * <p>
+ * Each entry given to {@link #submitEntry(ZipEntrySource)} is deflated by the executor into its own
+ * spool (kept in memory or in a temporary file if it gets large). The spools are appended to the
+ * archive in the order the entries were submitted, so the result is byte-for-byte the same as
+ * writing the entries one by one with {@link ZipRawCopyOutputStream}.
+ * <p>
+ * Entries written directly with {@link #putNextEntry(ZipEntry)} or copied with
+ * {@link #copyRawEntry(ZipRawEntry, long)} are written after all entries submitted before them.
+ */
+class ParallelZipOutputStream extends ZipRawCopyOutputStream {
+
+  /**
+   * Spools larger than this are moved from memory into a temporary file.
+   */
+  private static final int MAX_MEMORY_SPOOL_SIZE = 1024 * 1024;
+
+  private final ExecutorService executor;
+
+  private final Charset charset;
+
+  /**
+   * Maximum number of entries being compressed or waiting to be written, limits the memory used.
+   */
+  private final int maxPending;
+
+  private final LinkedList<Future<SpooledEntry>> pending = new LinkedList<Future<SpooledEntry>>();
+
+  private int level = Deflater.DEFAULT_COMPRESSION;
+
+  ParallelZipOutputStream(OutputStream out, Charset charset, ExecutorService executor) {
+    this(out, charset, executor, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  ParallelZipOutputStream(OutputStream out, Charset charset, ExecutorService executor, int maxPending) {
+    super(out, charset);
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor must be given");
+    }
+    this.executor = executor;
+    this.charset = charset;
+    this.maxPending = Math.max(1, maxPending);
+  }
+
+  public void setLevel(int level) {
+    super.setLevel(level);
+    this.level = level;
+  }
+
+  /**
+   * Compresses the given entry in the background. The entry and its contents are read by the executor.
+   *
+   * @param source
+   *          new ZIP entry.
+   */
+  void submitEntry(final ZipEntrySource source) throws IOException {
+    while (pending.size() >= maxPending) {
+      writePending(pending.removeFirst());
+    }
+    final int entryLevel = level;
+    pending.add(executor.submit(new Callable<SpooledEntry>() {
+      public SpooledEntry call() throws IOException {
+        return compress(source, entryLevel);
+      }
+    }));
+  }
+
+  /**
+   * Compresses the given entry in the background. The given stream is read and closed by the executor.
+   *
+   * @param entry
+   *          new ZIP entry.
+   * @param in
+   *          contents of the entry, may be <code>null</code>.
+   */
+  void submitEntry(final ZipEntry entry, final InputStream in) throws IOException {
+    submitEntry(new ZipEntrySource() {
+      public String getPath() {
+        return entry.getName();
+      }
+
+      public ZipEntry getEntry() {
+        return entry;
+      }
+
+      public InputStream getInputStream() {
+        return in;
+      }
+    });
+  }
+
+  public void putNextEntry(ZipEntry e) throws IOException {
+    writeAllPending();
+    super.putNextEntry(e);
+  }
+
+  void copyRawEntry(ZipRawEntry entry, long time) throws IOException {
+    writeAllPending();
+    super.copyRawEntry(entry, time);
+  }
+
+  public void finish() throws IOException {
+    writeAllPending();
+    super.finish();
+  }
+
+  public void close() throws IOException {
+    try {
+      super.close();
+    }
+    finally {
+      // only left over if writing has failed
+      cancelPending();
+    }
+  }
+
+  private void writeAllPending() throws IOException {
+    while (!pending.isEmpty()) {
+      writePending(pending.removeFirst());
+    }
+  }
+
+  private void writePending(Future<SpooledEntry> future) throws IOException {
+    SpooledEntry spooled;
+    try {
+      spooled = future.get();
+    }
+    catch (InterruptedException e) {
+      cancelPending();
+      Thread.currentThread().interrupt();
+      throw new ZipException("Interrupted while compressing entries", e);
+    }
+    catch (ExecutionException e) {
+      cancelPending();
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ZipException("Failed to compress entry", cause);
+    }
+
+    try {
+      InputStream in = spooled.spool.getInputStream();
+      try {
+        appendEntries(spooled.part, in);
+      }
+      finally {
+        IOUtils.closeQuietly(in);
+      }
+    }
+    finally {
+      spooled.spool.delete();
+    }
+  }
+
+  private void cancelPending() {
+    while (!pending.isEmpty()) {
+      Future<SpooledEntry> future = pending.removeFirst();
+      if (!future.cancel(true)) {
+        try {
+          future.get().spool.delete();
+        }
+        catch (Exception e) {
+          // already reported or cancelled
+        }
+      }
+    }
+  }
+
+  private SpooledEntry compress(ZipEntrySource source, int entryLevel) throws IOException {
+    Spool spool = new Spool();
+    ZipRawCopyOutputStream part = new ZipRawCopyOutputStream(spool, charset);
+    boolean success = false;
+    try {
+      part.setLevel(entryLevel);
+      ZipEntry entry = source.getEntry();
+      InputStream in = source.getInputStream();
+      try {
+        ZipEntryUtil.addEntry(entry, in, part);
+      }
+      finally {
+        IOUtils.closeQuietly(in);
+      }
+      part.finish();
+      success = true;
+    }
+    finally {
+      IOUtils.closeQuietly(part);
+      if (!success) {
+        spool.delete();
+      }
+    }
+    return new SpooledEntry(part, spool);
+  }
+
+  private static class SpooledEntry {
+
+    private final ZipRawCopyOutputStream part;
+
+    private final Spool spool;
+
+    SpooledEntry(ZipRawCopyOutputStream part, Spool spool) {
+      this.part = part;
+      this.spool = spool;
+    }
+
+  }
+
+  /**
+   * Output stream that keeps the data in memory and moves it into a temporary file
+   * once it exceeds {@link ParallelZipOutputStream#MAX_MEMORY_SPOOL_SIZE}.
+   */
+  private static class Spool extends OutputStream {
+
+    private byte[] buf = new byte[8192];
+
+    private int count;
+
+    private File file;
+
+    private OutputStream fileOut;
+
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (fileOut == null && count + len > MAX_MEMORY_SPOOL_SIZE) {
+        file = File.createTempFile("zt-zip-spool", ".tmp");
+        fileOut = new BufferedOutputStream(new FileOutputStream(file));
+        fileOut.write(buf, 0, count);
+        buf = null;
+      }
+      if (fileOut != null) {
+        fileOut.write(b, off, len);
+        return;
+      }
+      if (count + len > buf.length) {
+        byte[] newBuf = new byte[Math.max(buf.length * 2, count + len)];
+        System.arraycopy(buf, 0, newBuf, 0, count);
+        buf = newBuf;
+      }
+      System.arraycopy(b, off, buf, count, len);
+      count += len;
+    }
+
+    public void close() throws IOException {
+      if (fileOut != null) {
+        fileOut.close();
+      }
+    }
+
+    InputStream getInputStream() throws IOException {
+      if (file != null) {
+        return new BufferedInputStream(new FileInputStream(file));
+      }
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    void delete() {
+      IOUtils.closeQuietly(fileOut);
+      FileUtils.deleteQuietly(file);
+      buf = null;
+    }
+
+  }
+
+}
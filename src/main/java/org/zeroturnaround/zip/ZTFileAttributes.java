@@ -0,0 +1,59 @@
+package org.zeroturnaround.zip;
+
+import java.io.File;
+
+/**
+ * This class holds the attributes of a file needed for creating its ZIP entry.
+ */
+class ZTFileAttributes {
+  private final boolean directory;
+  private final long size;
+  private final long lastModified;
+  private final ZTFilePermissions permissions;
+  /**
+   * File whose permissions are looked up once needed, <code>null</code> if they are already given.
+   */
+  private final File file;
+
+  ZTFileAttributes(boolean directory, long size, long lastModified, ZTFilePermissions permissions) {
+    this.directory = directory;
+    this.size = size;
+    this.lastModified = lastModified;
+    this.permissions = permissions;
+    this.file = null;
+  }
+
+  /**
+   * Reads the attributes with java.io, the permissions are looked up with the default strategy
+   * only when asked for, e.g. not for files that are filtered out.
+   */
+  ZTFileAttributes(File file) {
+    this.directory = file.isDirectory();
+    this.size = file.length();
+    this.lastModified = file.lastModified();
+    this.permissions = null;
+    this.file = file;
+  }
+
+  boolean isDirectory() {
+    return directory;
+  }
+
+  long getSize() {
+    return size;
+  }
+
+  long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return permissions or <code>null</code> if they are not available.
+   */
+  ZTFilePermissions getPermissions() {
+    if (file != null) {
+      return ZTFilePermissionsUtil.getDefaultStategy().getPermissions(file);
+    }
+    return permissions;
+  }
+}
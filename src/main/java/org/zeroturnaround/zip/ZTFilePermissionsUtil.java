@@ -33,6 +33,20 @@ class ZTFilePermissionsUtil {
     return DEFAULT_STRATEGY;
   }
   
+  /**
+   * Read the attributes of the given file, with a single call to the file system if the
+   * default strategy supports it.
+   * 
+   * @param file file to read the attributes of
+   * @return attributes of the file, its permissions are <code>null</code> if not available.
+   */
+  static ZTFileAttributes readAttributes(File file) {
+    if (DEFAULT_STRATEGY instanceof Java7Nio2ApiPermissionsStrategy) {
+      return ((Java7Nio2ApiPermissionsStrategy) DEFAULT_STRATEGY).readAttributes(file);
+    }
+    return new ZTFileAttributes(file.isDirectory(), file.length(), file.lastModified(), DEFAULT_STRATEGY.getPermissions(file));
+  }
+  
   /**
    * Convert {@link ZTFilePermissions} to POSIX file permission bit array.
    * 
@@ -86,6 +100,27 @@ class ZTFilePermissionsUtil {
     return permissions;
   }
   
+  /**
+   * Shared instances by POSIX mode, the same for every entry unpacked.
+   */
+  private static final ZTFilePermissions[] SHARED_PERMISSIONS = new ZTFilePermissions[01000];
+  
+  static {
+    for (int mode = 0; mode < SHARED_PERMISSIONS.length; mode++) {
+      SHARED_PERMISSIONS[mode] = fromPosixFileMode(mode);
+    }
+  }
+  
+  /**
+   * Get a shared {@link ZTFilePermissions} for the given Posix mode, it must not be modified.
+   * 
+   * @param mode Posix mode (only the permission bits)
+   * @return shared permissions
+   */
+  static ZTFilePermissions sharedFromPosixFileMode(int mode) {
+    return SHARED_PERMISSIONS[mode & 0777];
+  }
+  
   /**
    * Empty {@link ZTFilePermissionsStrategy} implementation.
    */
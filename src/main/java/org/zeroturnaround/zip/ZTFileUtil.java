@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.FileFilter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public final class ZTFileUtil {
   private ZTFileUtil() {
@@ -48,6 +50,36 @@ public final class ZTFileUtil {
     return accumulator;
   }
 
+  /**
+   * Lists the files (not directories) under the given directory with their attributes, which
+   * are read once per file and directory.
+   *
+   * @param dir root directory.
+   * @return the files in the same order as {@link #listFiles(File)}, with their attributes.
+   */
+  static Map<File, ZTFileAttributes> listFilesWithAttributes(File dir) {
+    Map<File, ZTFileAttributes> accumulator = new LinkedHashMap<File, ZTFileAttributes>();
+    innerListFilesWithAttributes(dir, accumulator);
+    return accumulator;
+  }
+
+  private static void innerListFilesWithAttributes(File dir, Map<File, ZTFileAttributes> accumulator) {
+    String[] filenames = dir.list();
+
+    if (filenames != null) {
+      for (int i = 0; i < filenames.length; i++) {
+        File file = new File(dir, filenames[i]);
+        ZTFileAttributes attributes = ZTFilePermissionsUtil.readAttributes(file);
+        if (attributes.isDirectory()) {
+          innerListFilesWithAttributes(file, accumulator);
+        }
+        else {
+          accumulator.put(file, attributes);
+        }
+      }
+    }
+  }
+
   private static void innerListFiles(File dir, Collection<File> accumulator, FileFilter filter) {
 
     String[] filenames = dir.list();
@@ -0,0 +1,184 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of {@link Deflater}s and {@link Inflater}s used for the entries written and read by
+ * {@link ZipUtil} and {@link Zips}. Each of them holds native memory which is otherwise allocated
+ * and freed (or left to the finalizer) for every entry or archive.
+ * <p>
+ * Deflaters are pooled per compression level. At most {@link #getMaxIdle()} idle instances of
+ * each kind are kept, the rest are ended once released. Call {@link #clear()} to end all idle
+ * instances, e.g. when the application shuts down.
+ *
+ * @since 1.9
+ */
+public final class ZipCodecPool {
+
+  private static int maxIdle = 2 * Runtime.getRuntime().availableProcessors();
+
+  private static final LinkedList<Inflater> inflaters = new LinkedList<Inflater>();
+
+  private static final Map<Integer, LinkedList<Deflater>> deflaters = new HashMap<Integer, LinkedList<Deflater>>();
+
+  private ZipCodecPool() {
+  }
+
+  /**
+   * Sets the maximum number of idle instances kept of each kind, 0 disables pooling.
+   * Superfluous idle instances are ended.
+   *
+   * @param maxIdle
+   *          maximum number of idle inflaters and of idle deflaters of each compression level.
+   */
+  public static void setMaxIdle(int maxIdle) {
+    if (maxIdle < 0) {
+      throw new IllegalArgumentException("Maximum number of idle instances must not be negative: " + maxIdle);
+    }
+    List<Object> ended = new ArrayList<Object>();
+    synchronized (ZipCodecPool.class) {
+      ZipCodecPool.maxIdle = maxIdle;
+      while (inflaters.size() > maxIdle) {
+        ended.add(inflaters.removeLast());
+      }
+      for (LinkedList<Deflater> idle : deflaters.values()) {
+        while (idle.size() > maxIdle) {
+          ended.add(idle.removeLast());
+        }
+      }
+    }
+    end(ended);
+  }
+
+  /**
+   * @return maximum number of idle instances kept of each kind.
+   */
+  public static synchronized int getMaxIdle() {
+    return maxIdle;
+  }
+
+  /**
+   * Ends all the idle inflaters and deflaters. Instances in use are pooled again once released.
+   */
+  public static void clear() {
+    List<Object> ended = new ArrayList<Object>();
+    synchronized (ZipCodecPool.class) {
+      ended.addAll(inflaters);
+      inflaters.clear();
+      for (LinkedList<Deflater> idle : deflaters.values()) {
+        ended.addAll(idle);
+      }
+      deflaters.clear();
+    }
+    end(ended);
+  }
+
+  /**
+   * @return number of idle inflaters and deflaters.
+   */
+  static synchronized int size() {
+    int result = inflaters.size();
+    for (LinkedList<Deflater> idle : deflaters.values()) {
+      result += idle.size();
+    }
+    return result;
+  }
+
+  /**
+   * @return an inflater for raw deflate data (<code>nowrap</code>), to be given to {@link #release(Inflater)}.
+   */
+  static Inflater acquireInflater() {
+    synchronized (ZipCodecPool.class) {
+      if (!inflaters.isEmpty()) {
+        return inflaters.removeFirst();
+      }
+    }
+    return new Inflater(true);
+  }
+
+  /**
+   * Resets the given inflater and returns it to the pool. It must not be used afterwards.
+   */
+  static void release(Inflater inf) {
+    inf.reset();
+    synchronized (ZipCodecPool.class) {
+      if (inflaters.size() < maxIdle) {
+        inflaters.addFirst(inf);
+        return;
+      }
+    }
+    inf.end();
+  }
+
+  /**
+   * @param level
+   *          compression level.
+   * @return a deflater producing raw deflate data (<code>nowrap</code>), to be given to {@link #release(Deflater, int)}.
+   */
+  static Deflater acquireDeflater(int level) {
+    synchronized (ZipCodecPool.class) {
+      LinkedList<Deflater> idle = deflaters.get(level);
+      if (idle != null && !idle.isEmpty()) {
+        return idle.removeFirst();
+      }
+    }
+    return new Deflater(level, true);
+  }
+
+  /**
+   * Resets the given deflater and returns it to the pool. It must not be used afterwards.
+   *
+   * @param def
+   *          deflater returned by {@link #acquireDeflater(int)}.
+   * @param level
+   *          the compression level it was acquired with.
+   */
+  static void release(Deflater def, int level) {
+    def.reset();
+    synchronized (ZipCodecPool.class) {
+      LinkedList<Deflater> idle = deflaters.get(level);
+      if (idle == null) {
+        idle = new LinkedList<Deflater>();
+        deflaters.put(level, idle);
+      }
+      if (idle.size() < maxIdle) {
+        idle.addFirst(def);
+        return;
+      }
+    }
+    def.end();
+  }
+
+  private static void end(List<Object> codecs) {
+    for (Object codec : codecs) {
+      if (codec instanceof Inflater) {
+        ((Inflater) codec).end();
+      }
+      else {
+        ((Deflater) codec).end();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Differences between the entries of two ZIP files, as returned by {@link ZipUtil#diff(java.io.File, java.io.File)}.
+ * <p>
+ * Each entry name is in at most one of the sets, in the order of the central directory of the
+ * archive it was found in:
+ * <ul>
+ * <li>added - entries only in the second archive,</li>
+ * <li>removed - entries only in the first archive,</li>
+ * <li>content modified - entries whose contents (or type) differ,</li>
+ * <li>metadata modified - entries with the same contents but a different modification time,
+ * extra data (e.g. permissions) or comment.</li>
+ * </ul>
+ *
+ * @since 1.9
+ */
+public final class ZipDiff {
+
+  private final Set<String> added = new LinkedHashSet<String>();
+
+  private final Set<String> removed = new LinkedHashSet<String>();
+
+  private final Set<String> contentModified = new LinkedHashSet<String>();
+
+  private final Set<String> metadataModified = new LinkedHashSet<String>();
+
+  ZipDiff() {
+  }
+
+  /**
+   * @return names of the entries only found in the second archive.
+   */
+  public Set<String> getAdded() {
+    return Collections.unmodifiableSet(added);
+  }
+
+  /**
+   * @return names of the entries only found in the first archive.
+   */
+  public Set<String> getRemoved() {
+    return Collections.unmodifiableSet(removed);
+  }
+
+  /**
+   * @return names of the entries whose contents or type differ.
+   */
+  public Set<String> getContentModified() {
+    return Collections.unmodifiableSet(contentModified);
+  }
+
+  /**
+   * @return names of the entries with the same contents, but different modification time, extra data or comment.
+   */
+  public Set<String> getMetadataModified() {
+    return Collections.unmodifiableSet(metadataModified);
+  }
+
+  /**
+   * @return <code>true</code> if no differences were found.
+   */
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && contentModified.isEmpty() && metadataModified.isEmpty();
+  }
+
+  void added(String name) {
+    added.add(name);
+  }
+
+  void removed(String name) {
+    removed.add(name);
+  }
+
+  void contentModified(String name) {
+    contentModified.add(name);
+  }
+
+  void metadataModified(String name) {
+    metadataModified.add(name);
+  }
+
+  public String toString() {
+    return "ZipDiff[added=" + added + ", removed=" + removed
+        + ", contentModified=" + contentModified + ", metadataModified=" + metadataModified + "]";
+  }
+
+}
@@ -1,6 +1,5 @@
 package org.zeroturnaround.zip;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -12,6 +11,7 @@ import org.zeroturnaround.zip.commons.IOUtils;
 import org.zeroturnaround.zip.extra.AsiExtraField;
 import org.zeroturnaround.zip.extra.ExtraFieldUtils;
 import org.zeroturnaround.zip.extra.ZipExtraField;
+import org.zeroturnaround.zip.extra.ZipShort;
 
 /**
  * Util class for static methods shared between ZipUtil and Zips.
@@ -41,7 +41,9 @@ class ZipEntryUtil {
    * @return copy of the original entry, but with the given name
    */
   static ZipEntry copy(ZipEntry original, String newName) {
-    ZipEntry copy = new ZipEntry(newName == null ? original.getName() : newName);
+    String name = newName == null ? original.getName() : newName;
+    // keep the reference to the compressed data, so the entry can still be copied as is
+    ZipEntry copy = original instanceof ZipRawEntry ? new ZipRawEntry(name, (ZipRawEntry) original) : new ZipEntry(name);
     if (original.getCrc() != -1) {
       copy.setCrc(original.getCrc());
     }
@@ -77,6 +79,11 @@ class ZipEntryUtil {
   /**
    * Copies a given ZIP entry to a ZIP file. If this.preserveTimestamps is true, original timestamp
    * is carried over, otherwise uses current time.
+   * <p>
+   * If the entry was read by {@link ZipRawFile} and the target is a {@link ZipRawCopyOutputStream}
+   * the compressed data is copied as is and the given stream is not read.
+   * If the target is a {@link ParallelZipOutputStream} the entry is compressed in the background
+   * and the given stream is read and closed later.
    *
    * @param zipEntry
    *          a ZIP entry from existing ZIP file.
@@ -86,9 +93,17 @@ class ZipEntryUtil {
    *          target ZIP stream.
    */
   static void copyEntry(ZipEntry zipEntry, InputStream in, ZipOutputStream out, boolean preserveTimestamps) throws IOException {
+    if (zipEntry instanceof ZipRawEntry && out instanceof ZipRawCopyOutputStream) {
+      ((ZipRawCopyOutputStream) out).copyRawEntry((ZipRawEntry) zipEntry, preserveTimestamps ? -1 : System.currentTimeMillis());
+      return;
+    }
     ZipEntry copy = copy(zipEntry);
     copy.setTime(preserveTimestamps ? zipEntry.getTime() : System.currentTimeMillis());
-    addEntry(copy, new BufferedInputStream(in), out);
+    if (out instanceof ParallelZipOutputStream) {
+      ((ParallelZipOutputStream) out).submitEntry(copy, in);
+      return;
+    }
+    addEntry(copy, in, out);
   }
 
   /**
@@ -117,13 +132,24 @@ class ZipEntryUtil {
    * @return newly created Zip entry
    */
   static ZipEntry fromFile(String name, File file) {
+    return fromFile(name, ZTFilePermissionsUtil.readAttributes(file));
+  }
+  
+  /**
+   * Create new Zip entry and fill it with the given file meta-info
+   * 
+   * @param name Zip entry name
+   * @param attributes attributes of the source file
+   * @return newly created Zip entry
+   */
+  static ZipEntry fromFile(String name, ZTFileAttributes attributes) {
     ZipEntry zipEntry = new ZipEntry(name);
-    if (!file.isDirectory()) {
-      zipEntry.setSize(file.length());
+    if (!attributes.isDirectory()) {
+      zipEntry.setSize(attributes.getSize());
     }
-    zipEntry.setTime(file.lastModified());
+    zipEntry.setTime(attributes.getLastModified());
     
-    ZTFilePermissions permissions = ZTFilePermissionsUtil.getDefaultStategy().getPermissions(file);
+    ZTFilePermissions permissions = attributes.getPermissions();
     if (permissions != null) {
       ZipEntryUtil.setZTFilePermissions(zipEntry, permissions);
     }
@@ -165,14 +191,14 @@ class ZipEntryUtil {
    */
   static ZTFilePermissions getZTFilePermissions(ZipEntry zipEntry) {
     try {
-      ZTFilePermissions permissions = null;
-      List<ZipExtraField> fields = ExtraFieldUtils.parse(zipEntry.getExtra());
-      AsiExtraField asiExtraField = getFirstAsiExtraField(fields);
-      if (asiExtraField != null) {
-        int mode = asiExtraField.getMode() & 0777;
-        permissions = ZTFilePermissionsUtil.fromPosixFileMode(mode);
+      // scan the extra data in place, this is called for every unpacked entry
+      byte[] extra = zipEntry.getExtra();
+      int offset = ExtraFieldUtils.indexOfLast(extra, AsiExtraField.HEADER_ID_VALUE);
+      if (offset == -1) {
+        return null;
       }
-      return permissions;
+      int mode = AsiExtraField.parseMode(extra, offset, ZipShort.getValue(extra, offset - 2)) & 0777;
+      return ZTFilePermissionsUtil.sharedFromPosixFileMode(mode);
     }
     catch (java.util.zip.ZipException ze) {
       throw new ZipException(ze);
@@ -0,0 +1,256 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+/**
+ * Opt-in cache of open {@link ZipFile}s used by the methods of {@link ZipUtil} that look up
+ * single entries of a ZIP file (e.g. {@link ZipUtil#containsEntry(File, String)},
+ * {@link ZipUtil#unpackEntry(File, String)} and {@link ZipUtil#handle(File, String, ZipEntryCallback)}).
+ * <p>
+ * The cache is disabled by default. Once enabled, a ZIP file is kept open after it has been used, so
+ * its central directory is not parsed again on the next lookup. A cached file is reused only if its
+ * canonical path, modification time and length are unchanged. If more files than allowed are open,
+ * the least recently used ones that are not in use are closed.
+ * <p>
+ * Changes of a file that keep both its length and its modification time (which may have a
+ * granularity of seconds) are not noticed. Call {@link #clear()} after such changes.
+ *
+ * @since 1.9
+ */
+public final class ZipFileCache {
+
+  /**
+   * Maximum number of idle ZIP files kept open, 0 if the cache is disabled.
+   */
+  private static int maxOpenFiles;
+
+  /**
+   * Cached files by canonical path, in the order of access.
+   */
+  private static final Map<String, CachedZipFile> cache = new LinkedHashMap<String, CachedZipFile>(16, 0.75f, true);
+
+  /**
+   * All the files that are cached or in use.
+   */
+  private static final Map<ZipFile, CachedZipFile> openFiles = new IdentityHashMap<ZipFile, CachedZipFile>();
+
+  private ZipFileCache() {
+  }
+
+  /**
+   * Enables the cache.
+   *
+   * @param maxOpenFiles
+   *          maximum number of ZIP files kept open (files currently in use may exceed it).
+   */
+  public static synchronized void enable(int maxOpenFiles) {
+    if (maxOpenFiles <= 0) {
+      throw new IllegalArgumentException("Maximum number of open files must be positive: " + maxOpenFiles);
+    }
+    ZipFileCache.maxOpenFiles = maxOpenFiles;
+    evictIdle();
+  }
+
+  /**
+   * Disables the cache and closes all the files not in use (others are closed once released).
+   */
+  public static synchronized void disable() {
+    maxOpenFiles = 0;
+    clear();
+  }
+
+  /**
+   * @return <code>true</code> if the cache is enabled.
+   */
+  public static synchronized boolean isEnabled() {
+    return maxOpenFiles > 0;
+  }
+
+  /**
+   * Closes all the cached files not in use (others are closed once released).
+   */
+  public static synchronized void clear() {
+    List<CachedZipFile> all = new ArrayList<CachedZipFile>(cache.values());
+    cache.clear();
+    for (CachedZipFile cached : all) {
+      retire(cached);
+    }
+  }
+
+  /**
+   * @return number of cached files.
+   */
+  static synchronized int size() {
+    return cache.size();
+  }
+
+  /**
+   * Opens a ZIP file or returns the cached one. The result must be given to {@link #release(ZipFile)}
+   * instead of closing it.
+   */
+  static ZipFile open(File zip) throws IOException {
+    if (!isEnabled()) {
+      return new ZipFile(zip);
+    }
+
+    String path = zip.getCanonicalPath();
+    long lastModified = zip.lastModified();
+    long length = zip.length();
+    synchronized (ZipFileCache.class) {
+      CachedZipFile cached = cache.get(path);
+      if (cached != null) {
+        if (cached.lastModified == lastModified && cached.length == length) {
+          cached.references++;
+          return cached.zipFile;
+        }
+        // the file has changed
+        cache.remove(path);
+        retire(cached);
+      }
+    }
+
+    // parse the central directory without holding the lock
+    ZipFile zf = new ZipFile(zip);
+    synchronized (ZipFileCache.class) {
+      CachedZipFile cached = new CachedZipFile(zf, lastModified, length);
+      cached.references = 1;
+      openFiles.put(zf, cached);
+      if (maxOpenFiles > 0 && !cache.containsKey(path)) {
+        cache.put(path, cached);
+        evictIdle();
+      }
+      else {
+        // opened concurrently or the cache was disabled meanwhile
+        cached.retired = true;
+      }
+    }
+    return zf;
+  }
+
+  /**
+   * Releases a ZIP file returned by {@link #open(File)}.
+   *
+   * @param zf
+   *          the ZIP file, may be <code>null</code>.
+   */
+  static void release(ZipFile zf) {
+    if (zf == null) {
+      return;
+    }
+    synchronized (ZipFileCache.class) {
+      CachedZipFile cached = openFiles.get(zf);
+      if (cached != null) {
+        cached.references--;
+        if (cached.references == 0) {
+          if (cached.retired) {
+            openFiles.remove(zf);
+          }
+          else {
+            evictIdle();
+            return;
+          }
+        }
+        else {
+          return;
+        }
+      }
+    }
+    ZipUtil.closeQuietly(zf);
+  }
+
+  /**
+   * Drops the given file from the cache, e.g. before it is replaced.
+   */
+  static void invalidate(File zip) {
+    String path;
+    synchronized (ZipFileCache.class) {
+      if (cache.isEmpty()) {
+        return;
+      }
+    }
+    try {
+      path = zip.getCanonicalPath();
+    }
+    catch (IOException e) {
+      path = zip.getAbsolutePath();
+    }
+    synchronized (ZipFileCache.class) {
+      CachedZipFile cached = cache.remove(path);
+      if (cached != null) {
+        retire(cached);
+      }
+    }
+  }
+
+  /**
+   * Closes the least recently used files not in use until at most {@link #maxOpenFiles} are cached.
+   */
+  private static void evictIdle() {
+    Iterator<CachedZipFile> it = cache.values().iterator();
+    while (cache.size() > maxOpenFiles && it.hasNext()) {
+      CachedZipFile cached = it.next();
+      if (cached.references == 0) {
+        it.remove();
+        retire(cached);
+      }
+    }
+  }
+
+  /**
+   * Marks the file as no longer cached and closes it if it's not in use.
+   */
+  private static void retire(CachedZipFile cached) {
+    cached.retired = true;
+    if (cached.references == 0) {
+      openFiles.remove(cached.zipFile);
+      ZipUtil.closeQuietly(cached.zipFile);
+    }
+  }
+
+  private static class CachedZipFile {
+
+    private final ZipFile zipFile;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private int references;
+
+    /**
+     * Whether the file is no longer cached and must be closed once released.
+     */
+    private boolean retired;
+
+    CachedZipFile(ZipFile zipFile, long lastModified, long length) {
+      this.zipFile = zipFile;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+  }
+
+}
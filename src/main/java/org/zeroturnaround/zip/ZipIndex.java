@@ -0,0 +1,481 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.zip.commons.FileUtils;
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * Index of the central directory of a ZIP file, stored in a file next to the archive
+ * (<code>archive.zip.ztidx</code>).
+ * <p>
+ * The index holds the entries sorted by the hash code of their names, so a single entry is
+ * found with a binary search that reads only a few records from the disk. It is meant for
+ * archives with a huge number of entries that are queried often: opening a {@link java.util.zip.ZipFile}
+ * reads the whole central directory while the index doesn't.
+ * <p>
+ * The index is bound to the length, the modification time and the END header of the archive.
+ * If any of them changes the index is ignored until it's built again.
+ * <p>
+ * The indexes are not used by {@link ZipUtil} by default, as almost no archive has one. Once they are
+ * enabled with {@link #enable()}, an index built with {@link #build(File)} is also used by
+ * {@link ZipUtil#containsEntry(File, String)}, {@link ZipUtil#containsAnyEntry(File, String[])},
+ * {@link ZipUtil#getCompressionLevelOfEntry(File, String)} and {@link ZipUtil#unpackEntry(File, String)}.
+ * <p>
+ * An opened index is not thread-safe.
+ *
+ * @since 1.9
+ */
+public final class ZipIndex implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ZipIndex.class);
+
+  /** Suffix of the index file */
+  public static final String SUFFIX = ".ztidx";
+
+  private static final int MAGIC = 0x5A544958; // "ZTIX"
+
+  private static final int VERSION = 1;
+
+  /** magic, version, archive length, modification time, END offset, END header, entry count, names length */
+  static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + ZipRawFile.ENDHDR + 4 + 4;
+
+  /** hash, name offset, name length, method, CRC, compressed size, size, local header offset */
+  static final int RECORD_SIZE = 4 + 4 + 2 + 2 + 4 + 8 + 8 + 8;
+
+  private final File zip;
+
+  private final RandomAccessFile index;
+
+  private final RandomAccessFile archive;
+
+  private final int count;
+
+  private final long namesOffset;
+
+  /**
+   * The last record read from the index.
+   */
+  private final byte[] record = new byte[RECORD_SIZE];
+
+  /**
+   * Whether {@link ZipUtil} looks for indexes.
+   */
+  private static volatile boolean enabled;
+
+  private ZipIndex(File zip, RandomAccessFile index, RandomAccessFile archive, int count) {
+    this.zip = zip;
+    this.index = index;
+    this.archive = archive;
+    this.count = count;
+    this.namesOffset = HEADER_SIZE + (long) count * RECORD_SIZE;
+  }
+
+  /**
+   * Lets {@link ZipUtil} use the indexes of the ZIP files it looks up entries in.
+   */
+  public static void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Stops {@link ZipUtil} from using indexes, this is the default.
+   */
+  public static void disable() {
+    enabled = false;
+  }
+
+  /**
+   * @return <code>true</code> if {@link ZipUtil} uses indexes.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return index file of the given ZIP file.
+   */
+  public static File getIndexFile(File zip) {
+    return new File(zip.getPath() + SUFFIX);
+  }
+
+  /**
+   * Creates or overwrites the index of the given ZIP file.
+   *
+   * @param zip
+   *          ZIP file.
+   * @return the index file.
+   */
+  public static File build(File zip) {
+    return build(zip, null);
+  }
+
+  /**
+   * Creates or overwrites the index of the given ZIP file.
+   *
+   * @param zip
+   *          ZIP file.
+   * @param charset
+   *          charset of the entry names, <code>null</code> means UTF-8.
+   * @return the index file.
+   */
+  public static File build(File zip, Charset charset) {
+    File indexFile = getIndexFile(zip);
+    File tmp = new File(indexFile.getPath() + ".tmp");
+    ZipRawFile zf = null;
+    try {
+      long length = zip.length();
+      long lastModified = zip.lastModified();
+      zf = new ZipRawFile(zip, charset);
+
+      // only the last entry of a name can be found, like in ZipFile
+      Map<String, ZipRawEntry> entriesByName = new LinkedHashMap<String, ZipRawEntry>();
+      for (ZipRawEntry e : zf.getEntries()) {
+        entriesByName.put(e.getName(), e);
+      }
+      List<ZipRawEntry> entries = new ArrayList<ZipRawEntry>(entriesByName.values());
+      // stable, keeps the original order of equal hash codes
+      Collections.sort(entries, new Comparator<ZipRawEntry>() {
+        public int compare(ZipRawEntry e1, ZipRawEntry e2) {
+          int h1 = e1.getName().hashCode();
+          int h2 = e2.getName().hashCode();
+          return h1 < h2 ? -1 : (h1 == h2 ? 0 : 1);
+        }
+      });
+
+      List<byte[]> names = new ArrayList<byte[]>(entries.size());
+      int namesLength = 0;
+      for (ZipRawEntry e : entries) {
+        byte[] name = ZipRawFile.encode(e.getName(), ZipRawFile.UTF8);
+        names.add(name);
+        namesLength += name.length;
+      }
+
+      byte[] end = new byte[ZipRawFile.ENDHDR];
+      zf.readFully(zf.getEndOffset(), end, 0, end.length);
+
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(length);
+        out.writeLong(lastModified);
+        out.writeLong(zf.getEndOffset());
+        out.write(end);
+        out.writeInt(entries.size());
+        out.writeInt(namesLength);
+
+        int nameOffset = 0;
+        for (int i = 0; i < entries.size(); i++) {
+          ZipRawEntry e = entries.get(i);
+          byte[] name = names.get(i);
+          out.writeInt(e.getName().hashCode());
+          out.writeInt(nameOffset);
+          out.writeShort(name.length);
+          out.writeShort(e.getRawMethod());
+          out.writeInt((int) e.getRawCrc());
+          out.writeLong(e.getRawCompressedSize());
+          out.writeLong(e.getRawSize());
+          out.writeLong(e.getLocalHeaderOffset());
+          nameOffset += name.length;
+        }
+        for (byte[] name : names) {
+          out.write(name);
+        }
+      }
+      finally {
+        IOUtils.closeQuietly(out);
+      }
+
+      if (!tmp.renameTo(indexFile)) {
+        FileUtils.forceDelete(indexFile);
+        FileUtils.moveFile(tmp, indexFile);
+      }
+      return indexFile;
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      ZipUtil.closeQuietly(zf);
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  /**
+   * Opens the index of the given ZIP file.
+   *
+   * @param zip
+   *          ZIP file.
+   * @return the index or <code>null</code> if there's no index or it's outdated or unreadable.
+   */
+  public static ZipIndex open(File zip) {
+    File indexFile = getIndexFile(zip);
+    if (!indexFile.isFile()) {
+      return null;
+    }
+    RandomAccessFile index = null;
+    RandomAccessFile archive = null;
+    try {
+      index = new RandomAccessFile(indexFile, "r");
+      if (index.length() < HEADER_SIZE) {
+        return null;
+      }
+      byte[] header = new byte[HEADER_SIZE];
+      index.readFully(header);
+      if (getInt(header, 0) != MAGIC || getInt(header, 4) != VERSION) {
+        return null;
+      }
+      long length = getLong(header, 8);
+      long lastModified = getLong(header, 16);
+      long endOffset = getLong(header, 24);
+      byte[] end = ZipRawFile.copyOf(header, 32, ZipRawFile.ENDHDR);
+      int count = getInt(header, 32 + ZipRawFile.ENDHDR);
+      int namesLength = getInt(header, 36 + ZipRawFile.ENDHDR);
+      if (count < 0 || namesLength < 0 || index.length() != HEADER_SIZE + (long) count * RECORD_SIZE + namesLength
+          || zip.length() != length || zip.lastModified() != lastModified) {
+        return null;
+      }
+
+      archive = new RandomAccessFile(zip, "r");
+      byte[] actualEnd = new byte[ZipRawFile.ENDHDR];
+      if (endOffset < 0 || endOffset + actualEnd.length > length) {
+        return null;
+      }
+      archive.seek(endOffset);
+      archive.readFully(actualEnd);
+      if (!Arrays.equals(end, actualEnd)) {
+        return null;
+      }
+
+      ZipIndex result = new ZipIndex(zip, index, archive, count);
+      index = null;
+      archive = null;
+      return result;
+    }
+    catch (IOException e) {
+      // the archive can still be read without the index
+      log.debug("Ignoring unreadable index " + indexFile, e);
+      return null;
+    }
+    finally {
+      closeQuietly(index);
+      closeQuietly(archive);
+    }
+  }
+
+  /**
+   * Opens the index of the given ZIP file if indexes are enabled.
+   *
+   * @return the index or <code>null</code> if indexes are disabled or {@link #open(File)} returns <code>null</code>.
+   */
+  static ZipIndex openIfEnabled(File zip) {
+    return enabled ? open(zip) : null;
+  }
+
+  /**
+   * @return number of entries in the index.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @param name
+   *          entry name.
+   * @return <code>true</code> if the ZIP file contains the given entry.
+   */
+  public boolean containsEntry(String name) {
+    try {
+      return find(name);
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+  }
+
+  /**
+   * @param name
+   *          entry name.
+   * @return <code>ZipEntry.STORED</code>, <code>ZipEntry.DEFLATED</code> or -1 if
+   *         the ZIP file does not contain the given entry.
+   */
+  public int getCompressionMethod(String name) {
+    try {
+      return find(name) ? getShort(record, 10) : -1;
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+  }
+
+  /**
+   * Returns an input stream of the given entry. The stream must be closed before this index.
+   *
+   * @param name
+   *          entry name.
+   * @return uncompressed contents of the entry or <code>null</code> if it was not found.
+   */
+  public InputStream getInputStream(String name) {
+    try {
+      if (!find(name)) {
+        return null;
+      }
+      int method = getShort(record, 10);
+      long compressedSize = getLong(record, 16);
+      long localHeaderOffset = getLong(record, 32);
+
+      byte[] loc = new byte[ZipRawFile.LOCHDR];
+      archive.seek(localHeaderOffset);
+      archive.readFully(loc);
+      if (ZipRawFile.getInt(loc, 0) != ZipRawFile.LOCSIG) {
+        throw new java.util.zip.ZipException("invalid LOC header (bad signature) for entry " + name);
+      }
+      long dataOffset = localHeaderOffset + ZipRawFile.LOCHDR + ZipRawFile.getShort(loc, 26) + ZipRawFile.getShort(loc, 28);
+      InputStream raw = new ZipRawFile.ChannelInputStream(archive.getChannel(), zip, dataOffset, compressedSize);
+      return ZipRawFile.inflate(raw, compressedSize, method, name);
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+  }
+
+  /**
+   * @param name
+   *          entry name.
+   * @return contents of the entry or <code>null</code> if it was not found.
+   */
+  public byte[] unpackEntry(String name) {
+    InputStream in = getInputStream(name);
+    if (in == null) {
+      return null;
+    }
+    try {
+      return IOUtils.toByteArray(in);
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  public void close() throws IOException {
+    try {
+      index.close();
+    }
+    finally {
+      archive.close();
+    }
+  }
+
+  /**
+   * Reads the record of the given entry into {@link #record}.
+   *
+   * @return <code>true</code> if the entry was found.
+   */
+  private boolean find(String name) throws IOException {
+    int hash = name.hashCode();
+
+    // first record with the given hash code
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      readRecord(mid);
+      if (getInt(record, 0) < hash) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+
+    byte[] encoded = null;
+    for (int i = low; i < count; i++) {
+      readRecord(i);
+      if (getInt(record, 0) != hash) {
+        break;
+      }
+      int nameOffset = getInt(record, 4);
+      int nameLength = getShort(record, 8);
+      if (encoded == null) {
+        encoded = ZipRawFile.encode(name, ZipRawFile.UTF8);
+      }
+      if (nameLength == encoded.length) {
+        byte[] candidate = new byte[nameLength];
+        index.seek(namesOffset + nameOffset);
+        index.readFully(candidate);
+        if (Arrays.equals(candidate, encoded)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void readRecord(int i) throws IOException {
+    // RandomAccessFile reads its values byte by byte, so the whole record is read at once
+    index.seek(HEADER_SIZE + (long) i * RECORD_SIZE);
+    index.readFully(record);
+  }
+
+  /* Helpers for reading big-endian values, as written by DataOutputStream. */
+
+  private static int getShort(byte[] b, int off) {
+    return ((b[off] & 0xff) << 8) | (b[off + 1] & 0xff);
+  }
+
+  private static int getInt(byte[] b, int off) {
+    return (getShort(b, off) << 16) | getShort(b, off + 2);
+  }
+
+  private static long getLong(byte[] b, int off) {
+    return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xFFFFFFFFL);
+  }
+
+  private static void closeQuietly(RandomAccessFile file) {
+    try {
+      if (file != null) {
+        file.close();
+      }
+    }
+    catch (IOException e) {
+      // ignore
+    }
+  }
+
+}
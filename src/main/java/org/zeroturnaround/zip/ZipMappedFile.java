@@ -0,0 +1,402 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads a ZIP file mapped into memory.
+ * <p>
+ * The central directory is parsed directly from the mapped buffer. Only the position of each
+ * record is remembered, the entry fields are read from the buffer when asked for. A {@link ZipEntry}
+ * is created only by {@link #getEntry(int)}. The contents of the entries are served from the
+ * buffer as well, so stored entries are available as {@link ByteBuffer} slices without copying.
+ * <p>
+ * The file is closed right after it has been mapped. The mapping itself is released by the
+ * garbage collector, so the file may stay locked on some platforms for a while after
+ * {@link #close()}. The file must not be truncated while it is mapped.
+ *
+ * @see ZipReaderBackend#MAPPED
+ */
+class ZipMappedFile implements Closeable {
+
+  private final File file;
+
+  private final Charset charset;
+
+  private ByteBuffer buffer;
+
+  /**
+   * Positions of the central directory records in the buffer.
+   */
+  private final int[] records;
+
+  /**
+   * Difference between the actual and recorded positions in the file (if some data has been
+   * prepended to the archive).
+   */
+  private final long shift;
+
+  /**
+   * Entry indexes by name, created on the first lookup.
+   */
+  private Map<String, Integer> indexes;
+
+  ZipMappedFile(File file) throws IOException {
+    this(file, null);
+  }
+
+  /**
+   * @param file ZIP file to open.
+   * @param charset charset of the entry names and comments, <code>null</code> means UTF-8.
+   */
+  ZipMappedFile(File file, Charset charset) throws IOException {
+    this.file = file;
+    this.charset = charset == null ? ZipRawFile.UTF8 : charset;
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long length = raf.length();
+      if (length > Integer.MAX_VALUE) {
+        throw new java.util.zip.ZipException("zip file is too large to be mapped: " + file);
+      }
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    finally {
+      raf.close();
+    }
+
+    int end = findEnd();
+    long cenSize = getInt(end + 12);
+    long cenOffset = getInt(end + 16);
+    long cenPosition = end - cenSize;
+
+    // ZIP64 END header is found via its locator which directly precedes the END header
+    int locator = end - ZipRawFile.ZIP64_LOCHDR;
+    if (locator >= 0 && getInt(locator) == ZipRawFile.ZIP64_LOCSIG) {
+      int zip64End = locator - ZipRawFile.ZIP64_ENDHDR;
+      if (zip64End < 0 || getInt(zip64End) != ZipRawFile.ZIP64_ENDSIG) {
+        throw new java.util.zip.ZipException("invalid zip64 END header: " + file);
+      }
+      cenSize = buffer.getLong(zip64End + 40);
+      cenOffset = buffer.getLong(zip64End + 48);
+      cenPosition = zip64End - cenSize;
+    }
+    if (cenPosition < 0 || cenSize < 0) {
+      throw new java.util.zip.ZipException("invalid END header (bad central directory offset): " + file);
+    }
+    shift = cenPosition - cenOffset;
+
+    records = readRecords((int) cenPosition, (int) (cenPosition + cenSize));
+  }
+
+  /**
+   * @return <code>true</code> if the given file is small enough to be mapped.
+   */
+  static boolean canMap(File file) {
+    return file.length() <= Integer.MAX_VALUE;
+  }
+
+  String getName() {
+    return file.getPath();
+  }
+
+  /**
+   * @return number of entries.
+   */
+  int size() {
+    return records.length;
+  }
+
+  /**
+   * @return name of the entry with the given index.
+   */
+  String getName(int i) {
+    int pos = records[i];
+    return decode(pos + ZipRawFile.CENHDR, getShort(pos + 28), getShort(pos + 8));
+  }
+
+  /**
+   * @return <code>true</code> if the entry with the given index is a directory (the name is not decoded).
+   */
+  boolean isDirectory(int i) {
+    int pos = records[i];
+    int nameLength = getShort(pos + 28);
+    return nameLength > 0 && buffer.get(pos + ZipRawFile.CENHDR + nameLength - 1) == '/';
+  }
+
+  int getMethod(int i) {
+    return getShort(records[i] + 10);
+  }
+
+  long getCrc(int i) {
+    return getInt(records[i] + 16);
+  }
+
+  long getCompressedSize(int i) {
+    long value = getInt(records[i] + 20);
+    return value == ZipRawFile.ZIP64_MAGIC ? getZip64Value(i, 1) : value;
+  }
+
+  long getSize(int i) {
+    long value = getInt(records[i] + 24);
+    return value == ZipRawFile.ZIP64_MAGIC ? getZip64Value(i, 0) : value;
+  }
+
+  /**
+   * @return index of the first entry with the given name or -1 if not found.
+   */
+  int indexOf(String name) {
+    synchronized (this) {
+      if (indexes == null) {
+        indexes = new HashMap<String, Integer>(records.length * 4 / 3 + 1);
+        for (int i = records.length - 1; i >= 0; i--) {
+          indexes.put(getName(i), Integer.valueOf(i));
+        }
+      }
+    }
+    Integer result = indexes.get(name);
+    return result == null ? -1 : result.intValue();
+  }
+
+  /**
+   * Creates a {@link ZipEntry} with the fields of the entry with the given index.
+   */
+  ZipEntry getEntry(int i) {
+    int pos = records[i];
+    int flag = getShort(pos + 8);
+    int nameLength = getShort(pos + 28);
+    int extraLength = getShort(pos + 30);
+    int commentLength = getShort(pos + 32);
+
+    ZipEntry entry = new ZipEntry(decode(pos + ZipRawFile.CENHDR, nameLength, flag));
+    entry.setMethod(getShort(pos + 10));
+    entry.setTime(ZipRawFile.dosToJavaTime(getInt(pos + 12)));
+    entry.setCrc(getCrc(i));
+    entry.setSize(getSize(i));
+    entry.setCompressedSize(getCompressedSize(i));
+    if (extraLength > 0) {
+      entry.setExtra(getBytes(pos + ZipRawFile.CENHDR + nameLength, extraLength));
+    }
+    if (commentLength > 0) {
+      entry.setComment(decode(pos + ZipRawFile.CENHDR + nameLength + extraLength, commentLength, flag));
+    }
+    return entry;
+  }
+
+  /**
+   * Returns the entry contents as they are stored in the archive (e.g. still deflated).
+   * The result shares the memory with the mapping.
+   */
+  ByteBuffer getRawData(int i) throws IOException {
+    long offset = getLocalHeaderOffset(i) + shift;
+    if (offset < 0 || offset + ZipRawFile.LOCHDR > buffer.limit() || getInt((int) offset) != ZipRawFile.LOCSIG) {
+      throw new java.util.zip.ZipException("invalid LOC header (bad signature) for entry " + getName(i));
+    }
+    long start = offset + ZipRawFile.LOCHDR + getShort((int) offset + 26) + getShort((int) offset + 28);
+    long end = start + getCompressedSize(i);
+    if (end > buffer.limit() || end < start) {
+      throw new java.util.zip.ZipException("invalid compressed size of entry " + getName(i));
+    }
+    ByteBuffer result = buffer.duplicate();
+    result.limit((int) end);
+    result.position((int) start);
+    return result.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns the contents of a stored entry without copying them.
+   *
+   * @return contents of the entry or <code>null</code> if the entry is compressed.
+   */
+  ByteBuffer getStoredData(int i) throws IOException {
+    if (getMethod(i) != ZipEntry.STORED) {
+      return null;
+    }
+    return getRawData(i);
+  }
+
+  /**
+   * @return input stream of the uncompressed entry contents.
+   */
+  InputStream getInputStream(int i) throws IOException {
+    ByteBuffer raw = getRawData(i);
+    return ZipRawFile.inflate(new ByteBufferInputStream(raw), raw.remaining(), getMethod(i), getName(i));
+  }
+
+  /**
+   * Drops the reference to the mapping, the memory is released once it's garbage collected.
+   */
+  public void close() {
+    buffer = null;
+    indexes = null;
+  }
+
+  private int findEnd() throws IOException {
+    int length = buffer.limit();
+    if (length < ZipRawFile.ENDHDR) {
+      throw new java.util.zip.ZipException("zip file is empty or too short: " + file);
+    }
+    int min = Math.max(0, length - ZipRawFile.ENDHDR - 0xFFFF);
+    for (int i = length - ZipRawFile.ENDHDR; i >= min; i--) {
+      if (getInt(i) == ZipRawFile.ENDSIG && i + ZipRawFile.ENDHDR + getShort(i + 20) <= length) {
+        return i;
+      }
+    }
+    throw new java.util.zip.ZipException("zip END header not found: " + file);
+  }
+
+  private int[] readRecords(int start, int end) throws IOException {
+    int[] result = new int[16];
+    int count = 0;
+    int pos = start;
+    while (pos + ZipRawFile.CENHDR <= end) {
+      if (getInt(pos) != ZipRawFile.CENSIG) {
+        throw new java.util.zip.ZipException("invalid CEN header (bad signature): " + file);
+      }
+      int next = pos + ZipRawFile.CENHDR + getShort(pos + 28) + getShort(pos + 30) + getShort(pos + 32);
+      if (next > end) {
+        throw new java.util.zip.ZipException("invalid CEN header (bad header size): " + file);
+      }
+      if (count == result.length) {
+        int[] larger = new int[count * 2];
+        System.arraycopy(result, 0, larger, 0, count);
+        result = larger;
+      }
+      result[count++] = pos;
+      pos = next;
+    }
+    int[] trimmed = new int[count];
+    System.arraycopy(result, 0, trimmed, 0, count);
+    return trimmed;
+  }
+
+  private long getLocalHeaderOffset(int i) {
+    long value = getInt(records[i] + 42);
+    if (value != ZipRawFile.ZIP64_MAGIC) {
+      return value;
+    }
+    int skip = 0;
+    if (getInt(records[i] + 24) == ZipRawFile.ZIP64_MAGIC) {
+      skip++;
+    }
+    if (getInt(records[i] + 20) == ZipRawFile.ZIP64_MAGIC) {
+      skip++;
+    }
+    return getZip64Value(i, skip);
+  }
+
+  /**
+   * Reads a value of the ZIP64 extra field.
+   *
+   * @param skip number of values preceding the requested one (only the values present are counted).
+   */
+  private long getZip64Value(int i, int skip) {
+    int pos = records[i];
+    int off = pos + ZipRawFile.CENHDR + getShort(pos + 28);
+    int end = off + getShort(pos + 30);
+    while (off + 4 <= end) {
+      int length = getShort(off + 2);
+      if (getShort(off) == ZipRawFile.ZIP64_EXTID) {
+        int p = off + 4 + skip * 8;
+        if (p + 8 <= off + 4 + length) {
+          return buffer.getLong(p);
+        }
+        break;
+      }
+      off += 4 + length;
+    }
+    return ZipRawFile.ZIP64_MAGIC;
+  }
+
+  private String decode(int pos, int length, int flag) {
+    if (length == 0) {
+      return "";
+    }
+    Charset cs = (flag & ZipRawFile.FLAG_UTF8) != 0 ? ZipRawFile.UTF8 : charset;
+    ByteBuffer b = buffer.duplicate();
+    b.limit(pos + length);
+    b.position(pos);
+    return cs.decode(b).toString();
+  }
+
+  private byte[] getBytes(int pos, int length) {
+    byte[] result = new byte[length];
+    ByteBuffer b = buffer.duplicate();
+    b.position(pos);
+    b.get(result);
+    return result;
+  }
+
+  private int getShort(int pos) {
+    return buffer.getShort(pos) & 0xFFFF;
+  }
+
+  private long getInt(int pos) {
+    return buffer.getInt(pos) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Reads the remaining bytes of a buffer.
+   */
+  static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    public long skip(long n) {
+      n = Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + (int) n);
+      return n;
+    }
+
+    public int available() {
+      return buffer.remaining();
+    }
+
+  }
+
+}
@@ -0,0 +1,132 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of directory paths stored as a trie of path segments. Checking whether an entry resides in
+ * one of the directories takes one lookup per directory level of the entry name, regardless of
+ * how many directories the set contains.
+ */
+class ZipPathPrefixes {
+
+  private final Node root = new Node();
+
+  private boolean empty = true;
+
+  ZipPathPrefixes() {
+  }
+
+  /**
+   * @param dirNames names of directories, with or without the trailing separator.
+   */
+  ZipPathPrefixes(Collection<String> dirNames) {
+    for (String dirName : dirNames) {
+      add(dirName);
+    }
+  }
+
+  /**
+   * Adds a directory to this set.
+   *
+   * @param dirName name of the directory, with or without the trailing separator.
+   */
+  void add(String dirName) {
+    Node node = root;
+    int start = 0;
+    int length = dirName.length();
+    while (start < length) {
+      int end = dirName.indexOf('/', start);
+      if (end < 0) {
+        end = length;
+      }
+      node = node.child(dirName.substring(start, end));
+      if (node.dir) {
+        // a parent directory is already in the set
+        return;
+      }
+      start = end + 1;
+    }
+    node.dir = true;
+    node.children = null;
+    empty = false;
+  }
+
+  /**
+   * @return <code>true</code> if no directories have been added.
+   */
+  boolean isEmpty() {
+    return empty;
+  }
+
+  /**
+   * Checks if entry given by name resides inside of one of the directories (or is one of them).
+   *
+   * @param entryName name of the ZIP entry.
+   * @return <code>true</code> if the name starts with one of the directories of this set.
+   */
+  boolean contains(String entryName) {
+    if (empty) {
+      return false;
+    }
+    if (root.dir) {
+      return true;
+    }
+    Node node = root;
+    int start = 0;
+    while (true) {
+      int end = entryName.indexOf('/', start);
+      if (end < 0 || node.children == null) {
+        return false;
+      }
+      node = node.children.get(entryName.substring(start, end));
+      if (node == null) {
+        return false;
+      }
+      if (node.dir) {
+        return true;
+      }
+      start = end + 1;
+    }
+  }
+
+  private static class Node {
+
+    /**
+     * Whether the path leading to this node is one of the directories.
+     */
+    boolean dir;
+
+    Map<String, Node> children;
+
+    Node child(String segment) {
+      if (children == null) {
+        children = new HashMap<String, Node>();
+      }
+      Node result = children.get(segment);
+      if (result == null) {
+        result = new Node();
+        children.put(segment, result);
+      }
+      return result;
+    }
+
+  }
+
+}
@@ -0,0 +1,707 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * ZIP output stream which in addition to the usual entries accepts entries of
+ * an existing archive that are copied without inflating and deflating them.
+ * <p>
+ * Entries written with {@link #putNextEntry(ZipEntry)} are compressed by
+ * {@link ZipOutputStream} as usual. Entries given to {@link #copyRawEntry(ZipRawEntry, long)}
+ * are copied byte-by-byte: the local header and the compressed data are transferred
+ * as is and only the central directory is written anew. Thus the cost of changing
+ * an archive depends on the size of the changes and not the size of the archive.
+ *
+ * @see ZipRawFile
+ */
+class ZipRawCopyOutputStream extends ZipOutputStream {
+
+  /** Extended timestamp extra field (0x5455) */
+  private static final int EXTT_EXTID = 0x5455;
+
+  /** NTFS extra field (0x000a) holding file times */
+  private static final int NTFS_EXTID = 0x000a;
+
+  private static final int ZIP64_MIN_VERSION = 45;
+
+  private static final int DEFLATED_VERSION = 20;
+
+  private final EntryOutput output;
+
+  private final Charset charset;
+
+  private final List<CentralRecord> records = new ArrayList<CentralRecord>();
+
+  private final Set<String> names = new HashSet<String>();
+
+  /**
+   * Entry currently written through {@link ZipOutputStream}.
+   */
+  private ZipEntry current;
+
+  private CentralRecord currentRecord;
+
+  private int method = DEFLATED;
+
+  private int level = Deflater.DEFAULT_COMPRESSION;
+
+  /**
+   * Deflater created by {@link ZipOutputStream}. It is ended right away as the entries are
+   * deflated with pooled deflaters, it is only kept in place while no entry is deflated.
+   */
+  private final Deflater unusedDeflater;
+
+  /**
+   * Deflater of the current entry borrowed from {@link ZipCodecPool}.
+   */
+  private Deflater pooledDeflater;
+
+  private int pooledLevel;
+
+  private boolean finished;
+
+  /**
+   * Offset of the central directory, known once finished.
+   */
+  private long centralDirectoryOffset = -1;
+
+  ZipRawCopyOutputStream(OutputStream out) {
+    this(out, null);
+  }
+
+  /**
+   * @param out target stream.
+   * @param charset charset of the entry names and comments, <code>null</code> means UTF-8.
+   */
+  ZipRawCopyOutputStream(OutputStream out, Charset charset) {
+    this(out, charset, 0);
+  }
+
+  /**
+   * @param out target stream.
+   * @param charset charset of the entry names and comments, <code>null</code> means UTF-8.
+   * @param offset position of the target stream in the ZIP file, e.g. when appending to an existing archive.
+   */
+  ZipRawCopyOutputStream(OutputStream out, Charset charset, long offset) {
+    super(new EntryOutput(out, offset));
+    this.output = (EntryOutput) this.out;
+    this.charset = charset == null ? ZipRawFile.UTF8 : charset;
+    this.unusedDeflater = def;
+    unusedDeflater.end();
+  }
+
+  public void setMethod(int method) {
+    super.setMethod(method);
+    this.method = method;
+  }
+
+  public void setLevel(int level) {
+    if ((level < 0 || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("invalid compression level");
+    }
+    // the level is given to the deflater of the next entry
+    this.level = level;
+  }
+
+  public void putNextEntry(ZipEntry e) throws IOException {
+    closeEntry();
+    checkName(e.getName());
+
+    // ZipOutputStream writes the local header right away, keep it to ourselves
+    output.capture();
+    try {
+      super.putNextEntry(e);
+    }
+    finally {
+      output.forward();
+    }
+    byte[] loc = output.getCaptured();
+
+    int flag = ZipRawFile.getShort(loc, 6);
+    byte[] name = ZipRawFile.copyOf(loc, ZipRawFile.LOCHDR, ZipRawFile.getShort(loc, 26));
+    if (!charset.equals(ZipRawFile.UTF8)) {
+      // ZipOutputStream has used UTF-8
+      name = ZipRawFile.encode(e.getName(), charset);
+      flag &= ~ZipRawFile.FLAG_UTF8;
+    }
+    byte[] extra = ZipRawFile.copyOf(loc, ZipRawFile.LOCHDR + ZipRawFile.getShort(loc, 26), ZipRawFile.getShort(loc, 28));
+
+    CentralRecord record = new CentralRecord();
+    record.versionMadeBy = ZipRawFile.getShort(loc, 4);
+    record.versionNeeded = ZipRawFile.getShort(loc, 4);
+    record.flag = flag;
+    record.method = ZipRawFile.getShort(loc, 8);
+    record.dosTime = ZipRawFile.getInt(loc, 10);
+    record.name = name;
+    record.extra = extra;
+    record.comment = e.getComment() == null ? new byte[0] : ZipRawFile.encode(e.getComment(), charset);
+    record.offset = output.getWritten();
+
+    ZipRawFile.putShort(loc, 6, flag);
+    writeLocalHeader(loc, name, extra);
+
+    current = e;
+    currentRecord = record;
+
+    if ((e.getMethod() == -1 ? method : e.getMethod()) == DEFLATED) {
+      pooledDeflater = ZipCodecPool.acquireDeflater(level);
+      pooledLevel = level;
+      def = pooledDeflater;
+    }
+  }
+
+  public void closeEntry() throws IOException {
+    if (current == null) {
+      return;
+    }
+    super.closeEntry();
+
+    if (pooledDeflater != null) {
+      // if closing has failed, the deflater is ended with the stream instead
+      def = unusedDeflater;
+      ZipCodecPool.release(pooledDeflater, pooledLevel);
+      pooledDeflater = null;
+    }
+
+    // sizes and CRC are known now
+    currentRecord.crc = current.getCrc();
+    currentRecord.compressedSize = current.getCompressedSize();
+    currentRecord.size = current.getSize();
+    records.add(currentRecord);
+
+    current = null;
+    currentRecord = null;
+  }
+
+  /**
+   * Copies the given entry of an existing archive without recompressing it.
+   *
+   * @param entry
+   *          entry of an open {@link ZipRawFile}, possibly renamed.
+   * @param time
+   *          new modification time of the entry or -1 to keep the original one.
+   */
+  void copyRawEntry(ZipRawEntry entry, long time) throws IOException {
+    closeEntry();
+    checkName(entry.getName());
+
+    ZipRawFile zf = entry.getZipFile();
+    byte[] loc = zf.readLocalHeader(entry);
+    int locNameLength = ZipRawFile.getShort(loc, 26);
+    byte[] locExtra = ZipRawFile.copyOf(loc, ZipRawFile.LOCHDR + locNameLength, ZipRawFile.getShort(loc, 28));
+    byte[] cenExtra = entry.getCentralExtra();
+    // streaming writers use 8-byte sizes in the data descriptor whenever the local header has a ZIP64 extra
+    boolean zip64 = ZipRawFile.findExtraField(locExtra, ZipRawFile.ZIP64_EXTID) >= 0;
+
+    CentralRecord record = createRecord(entry);
+    record.offset = output.getWritten();
+
+    int locFlag = ZipRawFile.getShort(loc, 6);
+    byte[] name;
+    if (entry.isRenamed()) {
+      name = ZipRawFile.encode(entry.getName(), charset);
+      int utf8 = charset.equals(ZipRawFile.UTF8) ? ZipRawFile.FLAG_UTF8 : 0;
+      record.flag = (record.flag & ~ZipRawFile.FLAG_UTF8) | utf8;
+      locFlag = (locFlag & ~ZipRawFile.FLAG_UTF8) | utf8;
+    }
+    else {
+      name = ZipRawFile.copyOf(loc, ZipRawFile.LOCHDR, locNameLength);
+    }
+    if (time != -1) {
+      // the extra fields would override the new time
+      record.dosTime = ZipRawFile.javaToDosTime(time);
+      locExtra = removeExtraFields(locExtra, EXTT_EXTID, NTFS_EXTID);
+      cenExtra = removeExtraFields(cenExtra, EXTT_EXTID, NTFS_EXTID);
+      ZipRawFile.putInt(loc, 10, record.dosTime);
+    }
+    record.name = name;
+    record.extra = cenExtra;
+
+    ZipRawFile.putShort(loc, 6, locFlag);
+    writeLocalHeader(loc, name, locExtra);
+
+    long dataOffset = entry.getLocalHeaderOffset() + loc.length;
+    transfer(zf, dataOffset, record.compressedSize);
+
+    if ((entry.getFlag() & ZipRawFile.FLAG_DATA_DESCRIPTOR) != 0) {
+      long descriptorOffset = dataOffset + record.compressedSize;
+      byte[] signature = new byte[4];
+      zf.readFully(descriptorOffset, signature, 0, 4);
+      zip64 |= record.size >= ZipRawFile.ZIP64_MAGIC || record.compressedSize >= ZipRawFile.ZIP64_MAGIC;
+      int length = zip64 ? 20 : 12;
+      if (ZipRawFile.getInt(signature, 0) == ZipRawFile.EXTSIG) {
+        length += 4;
+      }
+      transfer(zf, descriptorOffset, length);
+    }
+
+    records.add(record);
+  }
+
+  /**
+   * Writes a new entry with the contents of the given file.
+   *
+   * @param entry
+   *          the new entry.
+   * @param source
+   *          regular file with the contents of the entry.
+   */
+  void putFile(ZipEntry entry, File source) throws IOException {
+    putNextEntry(entry);
+    FileUtils.copy(source, this);
+    closeEntry();
+  }
+
+  /**
+   * Writes a new entry whose data is already deflated, e.g. the data of an earlier entry with
+   * the same contents.
+   *
+   * @param e
+   *          the new entry, its sizes and CRC are set to the given values.
+   * @param crc
+   *          CRC of the uncompressed contents.
+   * @param compressedSize
+   *          length of the deflated data.
+   * @param size
+   *          length of the uncompressed contents.
+   * @param data
+   *          deflated data, exactly <code>compressedSize</code> bytes are read.
+   */
+  void putDeflatedEntry(ZipEntry e, long crc, long compressedSize, long size, InputStream data) throws IOException {
+    if (compressedSize >= ZipRawFile.ZIP64_MAGIC || size >= ZipRawFile.ZIP64_MAGIC) {
+      throw new IllegalArgumentException("Entry " + e.getName() + " is too large");
+    }
+    closeEntry();
+    checkName(e.getName());
+
+    CentralRecord record = new CentralRecord();
+    record.versionMadeBy = DEFLATED_VERSION;
+    record.versionNeeded = DEFLATED_VERSION;
+    record.flag = charset.equals(ZipRawFile.UTF8) ? ZipRawFile.FLAG_UTF8 : 0;
+    record.method = DEFLATED;
+    record.dosTime = ZipRawFile.javaToDosTime(e.getTime() == -1 ? System.currentTimeMillis() : e.getTime());
+    record.crc = crc;
+    record.compressedSize = compressedSize;
+    record.size = size;
+    record.name = ZipRawFile.encode(e.getName(), charset);
+    record.extra = e.getExtra() == null ? new byte[0] : e.getExtra();
+    record.comment = e.getComment() == null ? new byte[0] : ZipRawFile.encode(e.getComment(), charset);
+    record.offset = output.getWritten();
+
+    // sizes are known, no data descriptor is needed
+    byte[] loc = new byte[ZipRawFile.LOCHDR];
+    ZipRawFile.putInt(loc, 0, ZipRawFile.LOCSIG);
+    ZipRawFile.putShort(loc, 4, record.versionNeeded);
+    ZipRawFile.putShort(loc, 6, record.flag);
+    ZipRawFile.putShort(loc, 8, record.method);
+    ZipRawFile.putInt(loc, 10, record.dosTime);
+    ZipRawFile.putInt(loc, 14, crc);
+    ZipRawFile.putInt(loc, 18, compressedSize);
+    ZipRawFile.putInt(loc, 22, size);
+    writeLocalHeader(loc, record.name, record.extra);
+
+    byte[] buffer = IOUtils.acquireCopyBuffer();
+    try {
+      long remaining = compressedSize;
+      while (remaining > 0) {
+        int n = data.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+        if (n < 0) {
+          throw new EOFException("Unexpected end of data of entry " + e.getName());
+        }
+        output.write(buffer, 0, n);
+        remaining -= n;
+      }
+    }
+    finally {
+      IOUtils.releaseCopyBuffer(buffer);
+    }
+
+    e.setMethod(DEFLATED);
+    e.setCrc(crc);
+    e.setCompressedSize(compressedSize);
+    e.setSize(size);
+    records.add(record);
+  }
+
+  /**
+   * @return number of bytes written so far (including the offset given to the constructor).
+   */
+  long getPosition() {
+    return output.getWritten();
+  }
+
+  /**
+   * Adds the given entry to the central directory without writing it. This is used when new
+   * entries are appended to an existing archive in place: the entries already present are kept
+   * where they are and only listed again in the new central directory.
+   *
+   * @param entry
+   *          entry of an open {@link ZipRawFile} which is the file this stream writes to.
+   */
+  void keepRawEntry(ZipRawEntry entry) {
+    if (entry.isRenamed()) {
+      throw new IllegalArgumentException("Entry " + entry.getName() + " is renamed");
+    }
+    // duplicates already in the archive are kept as they are
+    names.add(entry.getName());
+
+    CentralRecord record = createRecord(entry);
+    record.name = entry.getRawName();
+    record.extra = entry.getCentralExtra();
+    record.offset = entry.getLocalHeaderOffset();
+    records.add(record);
+  }
+
+  /**
+   * Appends the entries of another finished stream. Its local headers and compressed data
+   * are copied from the given input while its central directory is merged into this one.
+   *
+   * @param part
+   *          finished stream which has written its output into <code>data</code>.
+   * @param data
+   *          contents written by <code>part</code>, positioned at its beginning.
+   */
+  void appendEntries(ZipRawCopyOutputStream part, InputStream data) throws IOException {
+    if (!part.finished) {
+      throw new IllegalStateException("Stream to append is not finished");
+    }
+    closeEntry();
+    for (String name : part.names) {
+      checkName(name);
+    }
+
+    long base = output.getWritten();
+    byte[] buffer = IOUtils.acquireCopyBuffer();
+    try {
+      long remaining = part.centralDirectoryOffset;
+      while (remaining > 0) {
+        int n = data.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+        if (n < 0) {
+          throw new EOFException("Unexpected end of entries of " + part);
+        }
+        output.write(buffer, 0, n);
+        remaining -= n;
+      }
+    }
+    finally {
+      IOUtils.releaseCopyBuffer(buffer);
+    }
+
+    for (CentralRecord record : part.records) {
+      record.offset += base;
+      records.add(record);
+    }
+  }
+
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    closeEntry();
+
+    // ZipOutputStream knows only a part of the entries, drop its central directory
+    output.discard();
+    try {
+      super.finish();
+    }
+    finally {
+      output.forward();
+    }
+
+    writeCentralDirectory();
+    output.flush();
+    finished = true;
+  }
+
+  private void checkName(String name) throws java.util.zip.ZipException {
+    if (!names.add(name)) {
+      throw new java.util.zip.ZipException("duplicate entry: " + name);
+    }
+  }
+
+  private void writeLocalHeader(byte[] loc, byte[] name, byte[] extra) throws IOException {
+    ZipRawFile.putShort(loc, 26, name.length);
+    ZipRawFile.putShort(loc, 28, extra.length);
+    output.write(loc, 0, ZipRawFile.LOCHDR);
+    output.write(name);
+    output.write(extra);
+  }
+
+  private void transfer(ZipRawFile zf, long position, long length) throws IOException {
+    byte[] buffer = IOUtils.acquireCopyBuffer();
+    try {
+      while (length > 0) {
+        int n = (int) Math.min(length, buffer.length);
+        zf.readFully(position, buffer, 0, n);
+        output.write(buffer, 0, n);
+        position += n;
+        length -= n;
+      }
+    }
+    finally {
+      IOUtils.releaseCopyBuffer(buffer);
+    }
+  }
+
+  private void writeCentralDirectory() throws IOException {
+    long cenOffset = output.getWritten();
+    centralDirectoryOffset = cenOffset;
+    for (CentralRecord record : records) {
+      writeCentralHeader(record);
+    }
+    long cenSize = output.getWritten() - cenOffset;
+    int count = records.size();
+
+    if (count >= ZipRawFile.ZIP64_MAGIC_COUNT || cenOffset >= ZipRawFile.ZIP64_MAGIC || cenSize >= ZipRawFile.ZIP64_MAGIC) {
+      long zip64EndOffset = output.getWritten();
+
+      byte[] end = new byte[ZipRawFile.ZIP64_ENDHDR];
+      ZipRawFile.putInt(end, 0, ZipRawFile.ZIP64_ENDSIG);
+      ZipRawFile.putLong(end, 4, ZipRawFile.ZIP64_ENDHDR - 12);
+      ZipRawFile.putShort(end, 12, ZIP64_MIN_VERSION);
+      ZipRawFile.putShort(end, 14, ZIP64_MIN_VERSION);
+      ZipRawFile.putLong(end, 24, count);
+      ZipRawFile.putLong(end, 32, count);
+      ZipRawFile.putLong(end, 40, cenSize);
+      ZipRawFile.putLong(end, 48, cenOffset);
+      output.write(end);
+
+      byte[] locator = new byte[ZipRawFile.ZIP64_LOCHDR];
+      ZipRawFile.putInt(locator, 0, ZipRawFile.ZIP64_LOCSIG);
+      ZipRawFile.putLong(locator, 8, zip64EndOffset);
+      ZipRawFile.putInt(locator, 16, 1);
+      output.write(locator);
+    }
+
+    byte[] end = new byte[ZipRawFile.ENDHDR];
+    ZipRawFile.putInt(end, 0, ZipRawFile.ENDSIG);
+    ZipRawFile.putShort(end, 8, Math.min(count, ZipRawFile.ZIP64_MAGIC_COUNT));
+    ZipRawFile.putShort(end, 10, Math.min(count, ZipRawFile.ZIP64_MAGIC_COUNT));
+    ZipRawFile.putInt(end, 12, Math.min(cenSize, ZipRawFile.ZIP64_MAGIC));
+    ZipRawFile.putInt(end, 16, Math.min(cenOffset, ZipRawFile.ZIP64_MAGIC));
+    output.write(end);
+  }
+
+  private void writeCentralHeader(CentralRecord record) throws IOException {
+    boolean zip64Size = record.size >= ZipRawFile.ZIP64_MAGIC;
+    boolean zip64CompressedSize = record.compressedSize >= ZipRawFile.ZIP64_MAGIC;
+    boolean zip64Offset = record.offset >= ZipRawFile.ZIP64_MAGIC;
+
+    // ZIP64 extra field is always created anew as the offset has changed
+    byte[] extra = removeExtraFields(record.extra, ZipRawFile.ZIP64_EXTID, -1);
+    int versionNeeded = record.versionNeeded;
+    if (zip64Size || zip64CompressedSize || zip64Offset) {
+      int dataSize = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+      byte[] zip64 = new byte[4 + dataSize + extra.length];
+      ZipRawFile.putShort(zip64, 0, ZipRawFile.ZIP64_EXTID);
+      ZipRawFile.putShort(zip64, 2, dataSize);
+      int p = 4;
+      if (zip64Size) {
+        ZipRawFile.putLong(zip64, p, record.size);
+        p += 8;
+      }
+      if (zip64CompressedSize) {
+        ZipRawFile.putLong(zip64, p, record.compressedSize);
+        p += 8;
+      }
+      if (zip64Offset) {
+        ZipRawFile.putLong(zip64, p, record.offset);
+        p += 8;
+      }
+      System.arraycopy(extra, 0, zip64, p, extra.length);
+      extra = zip64;
+      versionNeeded = Math.max(versionNeeded, ZIP64_MIN_VERSION);
+    }
+
+    byte[] cen = new byte[ZipRawFile.CENHDR];
+    ZipRawFile.putInt(cen, 0, ZipRawFile.CENSIG);
+    ZipRawFile.putShort(cen, 4, record.versionMadeBy);
+    ZipRawFile.putShort(cen, 6, versionNeeded);
+    ZipRawFile.putShort(cen, 8, record.flag);
+    ZipRawFile.putShort(cen, 10, record.method);
+    ZipRawFile.putInt(cen, 12, record.dosTime);
+    ZipRawFile.putInt(cen, 16, record.crc);
+    ZipRawFile.putInt(cen, 20, zip64CompressedSize ? ZipRawFile.ZIP64_MAGIC : record.compressedSize);
+    ZipRawFile.putInt(cen, 24, zip64Size ? ZipRawFile.ZIP64_MAGIC : record.size);
+    ZipRawFile.putShort(cen, 28, record.name.length);
+    ZipRawFile.putShort(cen, 30, extra.length);
+    ZipRawFile.putShort(cen, 32, record.comment.length);
+    ZipRawFile.putShort(cen, 36, record.internalAttributes);
+    ZipRawFile.putInt(cen, 38, record.externalAttributes);
+    ZipRawFile.putInt(cen, 42, zip64Offset ? ZipRawFile.ZIP64_MAGIC : record.offset);
+    output.write(cen);
+    output.write(record.name);
+    output.write(extra);
+    output.write(record.comment);
+  }
+
+  /**
+   * @return central directory record with the attributes of the given entry except its name,
+   *         extra data and offset.
+   */
+  private static CentralRecord createRecord(ZipRawEntry entry) {
+    CentralRecord record = new CentralRecord();
+    record.versionMadeBy = entry.getVersionMadeBy();
+    record.versionNeeded = entry.getVersionNeeded();
+    record.flag = entry.getFlag();
+    record.method = entry.getRawMethod();
+    record.dosTime = entry.getDosTime();
+    record.crc = entry.getRawCrc();
+    record.compressedSize = entry.getRawCompressedSize();
+    record.size = entry.getRawSize();
+    record.comment = entry.getRawComment();
+    record.internalAttributes = entry.getInternalAttributes();
+    record.externalAttributes = entry.getExternalAttributes();
+    return record;
+  }
+
+  /**
+   * @return the given extra data without the blocks with the given header ids.
+   */
+  private static byte[] removeExtraFields(byte[] extra, int headerId1, int headerId2) {
+    ByteArrayOutputStream result = null;
+    int off = 0;
+    while (off + 4 <= extra.length) {
+      int id = ZipRawFile.getShort(extra, off);
+      int length = Math.min(4 + ZipRawFile.getShort(extra, off + 2), extra.length - off);
+      if (id == headerId1 || id == headerId2) {
+        if (result == null) {
+          result = new ByteArrayOutputStream(extra.length);
+          result.write(extra, 0, off);
+        }
+      }
+      else if (result != null) {
+        result.write(extra, off, length);
+      }
+      off += length;
+    }
+    return result == null ? extra : result.toByteArray();
+  }
+
+  /**
+   * Central directory record of an entry written.
+   */
+  private static class CentralRecord {
+    int versionMadeBy;
+    int versionNeeded;
+    int flag;
+    int method;
+    long dosTime;
+    long crc;
+    long compressedSize;
+    long size;
+    byte[] name;
+    byte[] extra;
+    byte[] comment;
+    int internalAttributes;
+    long externalAttributes;
+    long offset;
+  }
+
+  /**
+   * Target of the {@link ZipOutputStream} which counts the bytes written and
+   * may keep them back (local headers) or drop them (central directory).
+   */
+  private static class EntryOutput extends OutputStream {
+
+    private final OutputStream out;
+
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream(ZipRawFile.LOCHDR + 128);
+
+    private long written;
+
+    private boolean capture;
+
+    private boolean discard;
+
+    EntryOutput(OutputStream out, long offset) {
+      this.out = out;
+      this.written = offset;
+    }
+
+    long getWritten() {
+      return written;
+    }
+
+    void capture() {
+      captured.reset();
+      capture = true;
+      discard = false;
+    }
+
+    void discard() {
+      capture = false;
+      discard = true;
+    }
+
+    void forward() {
+      capture = false;
+      discard = false;
+    }
+
+    byte[] getCaptured() {
+      return captured.toByteArray();
+    }
+
+    public void write(int b) throws IOException {
+      if (capture) {
+        captured.write(b);
+      }
+      else if (!discard) {
+        out.write(b);
+        written++;
+      }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (capture) {
+        captured.write(b, off, len);
+      }
+      else if (!discard) {
+        out.write(b, off, len);
+        written += len;
+      }
+    }
+
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    public void close() throws IOException {
+      out.close();
+    }
+
+  }
+
+}
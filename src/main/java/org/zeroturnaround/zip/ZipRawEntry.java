@@ -0,0 +1,196 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.util.zip.ZipEntry;
+
+/**
+ * ZIP entry read by {@link ZipRawFile}. In addition to the usual meta-data it
+ * holds the central directory record of the entry, so its compressed data can
+ * be copied as is.
+ */
+class ZipRawEntry extends ZipEntry {
+
+  private final ZipRawFile zipFile;
+
+  /**
+   * Name of the entry in the archive (the entry may be renamed when copied).
+   */
+  private final String originalName;
+
+  private final byte[] rawName;
+
+  private final int versionMadeBy;
+
+  private final int versionNeeded;
+
+  private final int flag;
+
+  private final int method;
+
+  private final long dosTime;
+
+  private final long crc;
+
+  private final long compressedSize;
+
+  private final long size;
+
+  private final byte[] centralExtra;
+
+  private final byte[] rawComment;
+
+  private final int internalAttributes;
+
+  private final long externalAttributes;
+
+  private final long localHeaderOffset;
+
+  ZipRawEntry(ZipRawFile zipFile, String name, byte[] rawName, int versionMadeBy, int versionNeeded,
+      int flag, int method, long dosTime, long crc, long compressedSize, long size,
+      byte[] centralExtra, byte[] rawComment, String comment,
+      int internalAttributes, long externalAttributes, long localHeaderOffset) {
+    super(name);
+    this.zipFile = zipFile;
+    this.originalName = name;
+    this.rawName = rawName;
+    this.versionMadeBy = versionMadeBy;
+    this.versionNeeded = versionNeeded;
+    this.flag = flag;
+    this.method = method;
+    this.dosTime = dosTime;
+    this.crc = crc;
+    this.compressedSize = compressedSize;
+    this.size = size;
+    this.centralExtra = centralExtra;
+    this.rawComment = rawComment;
+    this.internalAttributes = internalAttributes;
+    this.externalAttributes = externalAttributes;
+    this.localHeaderOffset = localHeaderOffset;
+
+    // same order as in java.util.zip.ZipFile, the extra field may override the time
+    setTime(ZipRawFile.dosToJavaTime(dosTime));
+    if (method == STORED || method == DEFLATED) {
+      setMethod(method);
+    }
+    setCrc(crc);
+    setSize(size);
+    setCompressedSize(compressedSize);
+    if (centralExtra.length > 0) {
+      setExtra(centralExtra);
+    }
+    if (comment.length() > 0) {
+      setComment(comment);
+    }
+  }
+
+  /**
+   * Creates a renamed entry that refers to the same data as the given one.
+   * Only the name is set, other meta-data has to be copied by the caller.
+   *
+   * @see ZipEntryUtil#copy(ZipEntry, String)
+   */
+  ZipRawEntry(String name, ZipRawEntry original) {
+    super(name);
+    this.zipFile = original.zipFile;
+    this.originalName = original.originalName;
+    this.rawName = original.rawName;
+    this.versionMadeBy = original.versionMadeBy;
+    this.versionNeeded = original.versionNeeded;
+    this.flag = original.flag;
+    this.method = original.method;
+    this.dosTime = original.dosTime;
+    this.crc = original.crc;
+    this.compressedSize = original.compressedSize;
+    this.size = original.size;
+    this.centralExtra = original.centralExtra;
+    this.rawComment = original.rawComment;
+    this.internalAttributes = original.internalAttributes;
+    this.externalAttributes = original.externalAttributes;
+    this.localHeaderOffset = original.localHeaderOffset;
+  }
+
+  ZipRawFile getZipFile() {
+    return zipFile;
+  }
+
+  /**
+   * @return <code>true</code> if the entry has got a different name than in the original archive.
+   */
+  boolean isRenamed() {
+    return !originalName.equals(getName());
+  }
+
+  byte[] getRawName() {
+    return rawName;
+  }
+
+  int getVersionMadeBy() {
+    return versionMadeBy;
+  }
+
+  int getVersionNeeded() {
+    return versionNeeded;
+  }
+
+  int getFlag() {
+    return flag;
+  }
+
+  /**
+   * @return compression method, unlike {@link #getMethod()} also the ones not supported by Java.
+   */
+  int getRawMethod() {
+    return method;
+  }
+
+  long getDosTime() {
+    return dosTime;
+  }
+
+  long getRawCrc() {
+    return crc;
+  }
+
+  long getRawCompressedSize() {
+    return compressedSize;
+  }
+
+  long getRawSize() {
+    return size;
+  }
+
+  byte[] getCentralExtra() {
+    return centralExtra;
+  }
+
+  byte[] getRawComment() {
+    return rawComment;
+  }
+
+  int getInternalAttributes() {
+    return internalAttributes;
+  }
+
+  long getExternalAttributes() {
+    return externalAttributes;
+  }
+
+  long getLocalHeaderOffset() {
+    return localHeaderOffset;
+  }
+
+}
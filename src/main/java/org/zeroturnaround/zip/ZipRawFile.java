@@ -0,0 +1,725 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * Reads the central directory of a ZIP file without the help of {@link java.util.zip.ZipFile}.
+ * <p>
+ * Unlike <code>ZipFile</code> this class knows where the local header and the
+ * compressed data of each entry are located. This allows copying entries
+ * into another archive without inflating and deflating them again.
+ *
+ * @see ZipRawCopyOutputStream
+ */
+class ZipRawFile implements Closeable {
+
+  static final long LOCSIG = 0x04034b50L;
+  static final long EXTSIG = 0x08074b50L;
+  static final long CENSIG = 0x02014b50L;
+  static final long ENDSIG = 0x06054b50L;
+  static final long ZIP64_ENDSIG = 0x06064b50L;
+  static final long ZIP64_LOCSIG = 0x07064b50L;
+
+  static final int LOCHDR = 30;
+  static final int CENHDR = 46;
+  static final int ENDHDR = 22;
+  static final int ZIP64_ENDHDR = 56;
+  static final int ZIP64_LOCHDR = 20;
+
+  static final int ZIP64_EXTID = 0x0001;
+  static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+  /** General purpose flag: sizes and CRC are stored in a data descriptor. */
+  static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+  /** General purpose flag: names and comments are encoded in UTF-8. */
+  static final int FLAG_UTF8 = 0x800;
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final File file;
+
+  private final RandomAccessFile raf;
+
+  private final FileChannel channel;
+
+  private final Charset charset;
+
+  private final List<ZipRawEntry> entries = new ArrayList<ZipRawEntry>();
+
+  private final Map<String, ZipRawEntry> entriesByName = new HashMap<String, ZipRawEntry>();
+
+  /**
+   * Actual position of the central directory in the file.
+   */
+  private long centralDirectoryOffset;
+
+  /**
+   * Position of the END header in the file.
+   */
+  private long endOffset;
+
+  /**
+   * The file is closed once all the references are released.
+   *
+   * @see #retain()
+   */
+  private int references = 1;
+
+  ZipRawFile(File file) throws IOException {
+    this(file, null);
+  }
+
+  /**
+   * @param file ZIP file to open.
+   * @param charset charset of the entry names and comments, <code>null</code> means UTF-8.
+   */
+  ZipRawFile(File file, Charset charset) throws IOException {
+    this.file = file;
+    this.charset = charset == null ? UTF8 : charset;
+    this.raf = new RandomAccessFile(file, "r");
+    this.channel = raf.getChannel();
+    try {
+      readCentralDirectory();
+    }
+    catch (IOException e) {
+      close();
+      throw e;
+    }
+    catch (RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  String getName() {
+    return file.getPath();
+  }
+
+  /**
+   * @return entries in the order of the central directory.
+   */
+  List<ZipRawEntry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * @return entry with the given name or <code>null</code> if not found. Of entries with the same
+   *         name the last one is returned, like {@link java.util.zip.ZipFile#getEntry(String)} does.
+   */
+  ZipRawEntry getEntry(String name) {
+    return entriesByName.get(name);
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return position of the central directory, i.e. the end of the last entry.
+   */
+  long getCentralDirectoryOffset() {
+    return centralDirectoryOffset;
+  }
+
+  Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Returns an input stream of the uncompressed entry contents. Nothing is read
+   * until the stream is used for the first time.
+   */
+  InputStream getInputStream(ZipRawEntry entry) {
+    return new EntryInputStream(entry);
+  }
+
+  /**
+   * Returns an input stream of the entry contents as they are stored in the
+   * archive (e.g. still deflated).
+   */
+  InputStream getRawInputStream(ZipRawEntry entry) throws IOException {
+    return new ChannelInputStream(channel, file, getDataOffset(entry), entry.getRawCompressedSize());
+  }
+
+  /**
+   * Copies the contents of a stored entry into a file using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+   * so the data is copied by the operating system without passing through the Java heap.
+   *
+   * @param entry
+   *          a stored entry of this file.
+   * @param target
+   *          target file to be created or overwritten.
+   * @param verifyCrc
+   *          <code>true</code> if the target file should be read once more to check the CRC of the entry.
+   */
+  void transferTo(ZipRawEntry entry, File target, boolean verifyCrc) throws IOException {
+    if (entry.getRawMethod() != ZipEntry.STORED) {
+      throw new IllegalArgumentException("Entry " + entry.getName() + " is compressed");
+    }
+    long position = getDataOffset(entry);
+    long remaining = entry.getRawCompressedSize();
+    FileOutputStream out = new FileOutputStream(target);
+    try {
+      FileChannel outChannel = out.getChannel();
+      while (remaining > 0) {
+        long n = channel.transferTo(position, remaining, outChannel);
+        if (n <= 0 && position >= channel.size()) {
+          throw new EOFException("Unexpected end of ZIP file " + file);
+        }
+        position += n;
+        remaining -= n;
+      }
+    }
+    finally {
+      out.close();
+    }
+    if (verifyCrc) {
+      checkCrc(target, entry.getRawCrc(), entry.getName());
+    }
+  }
+
+  /**
+   * Checks that the CRC of the given file matches the expected one.
+   */
+  static void checkCrc(File file, long expected, String name) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = IOUtils.acquireCopyBuffer();
+    FileInputStream in = new FileInputStream(file);
+    try {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, n);
+      }
+    }
+    finally {
+      in.close();
+      IOUtils.releaseCopyBuffer(buffer);
+    }
+    if (crc.getValue() != expected) {
+      throw new java.util.zip.ZipException("invalid entry CRC of " + name + " (expected 0x"
+          + Long.toHexString(expected) + " but got 0x" + Long.toHexString(crc.getValue()) + ")");
+    }
+  }
+
+  /**
+   * @return the local file header of the given entry.
+   */
+  byte[] readLocalHeader(ZipRawEntry entry) throws IOException {
+    byte[] fixed = new byte[LOCHDR];
+    readFully(entry.getLocalHeaderOffset(), fixed, 0, LOCHDR);
+    if (getInt(fixed, 0) != LOCSIG) {
+      throw new java.util.zip.ZipException("invalid LOC header (bad signature) for entry " + entry.getName());
+    }
+    int length = LOCHDR + getShort(fixed, 26) + getShort(fixed, 28);
+    byte[] result = new byte[length];
+    System.arraycopy(fixed, 0, result, 0, LOCHDR);
+    readFully(entry.getLocalHeaderOffset() + LOCHDR, result, LOCHDR, length - LOCHDR);
+    return result;
+  }
+
+  /**
+   * @return position where the compressed data of the given entry starts.
+   */
+  long getDataOffset(ZipRawEntry entry) throws IOException {
+    byte[] fixed = new byte[LOCHDR];
+    readFully(entry.getLocalHeaderOffset(), fixed, 0, LOCHDR);
+    if (getInt(fixed, 0) != LOCSIG) {
+      throw new java.util.zip.ZipException("invalid LOC header (bad signature) for entry " + entry.getName());
+    }
+    return entry.getLocalHeaderOffset() + LOCHDR + getShort(fixed, 26) + getShort(fixed, 28);
+  }
+
+  /**
+   * Reads exactly <code>len</code> bytes starting from the given position of the file.
+   */
+  void readFully(long position, byte[] b, int off, int len) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position + buffer.position() - off);
+      if (n < 0) {
+        throw new EOFException("Unexpected end of ZIP file " + file);
+      }
+    }
+  }
+
+  /**
+   * Keeps this file open until {@link #close()} is called once more.
+   *
+   * @return this file.
+   */
+  synchronized ZipRawFile retain() {
+    if (references == 0) {
+      throw new IllegalStateException("ZIP file " + file + " is closed");
+    }
+    references++;
+    return this;
+  }
+
+  /**
+   * Returns an input stream like {@link #getInputStream(ZipRawEntry)} which keeps this file open
+   * until the stream is closed. Useful if the stream is read by another thread.
+   */
+  InputStream getRetainedInputStream(ZipRawEntry entry) {
+    retain();
+    return new EntryInputStream(entry, true);
+  }
+
+  /**
+   * Releases a reference to this file, the file is closed when no references are left.
+   */
+  public void close() throws IOException {
+    synchronized (this) {
+      if (references == 0 || --references > 0) {
+        return;
+      }
+    }
+    raf.close();
+  }
+
+  /**
+   * @return position of the END header.
+   */
+  long getEndOffset() {
+    return endOffset;
+  }
+
+  private void readCentralDirectory() throws IOException {
+    long length = raf.length();
+    if (length < ENDHDR) {
+      throw new java.util.zip.ZipException("zip file is empty or too short: " + file);
+    }
+
+    // Find the END header, it is followed only by the archive comment
+    int tailLength = (int) Math.min(length, ENDHDR + MAX_COMMENT_LENGTH);
+    long tailStart = length - tailLength;
+    byte[] tail = new byte[tailLength];
+    readFully(tailStart, tail, 0, tailLength);
+
+    int end = -1;
+    for (int i = tailLength - ENDHDR; i >= 0; i--) {
+      if (getInt(tail, i) == ENDSIG && i + ENDHDR + getShort(tail, i + 20) <= tailLength) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new java.util.zip.ZipException("zip END header not found: " + file);
+    }
+    long endPosition = tailStart + end;
+    endOffset = endPosition;
+
+    long cenSize = getInt(tail, end + 12);
+    long cenOffset = getInt(tail, end + 16);
+    long cenPosition = endPosition - cenSize;
+
+    // ZIP64 END header is found via its locator which directly precedes the END header
+    long locatorPosition = endPosition - ZIP64_LOCHDR;
+    if (locatorPosition >= 0) {
+      byte[] locator = new byte[ZIP64_LOCHDR];
+      readFully(locatorPosition, locator, 0, ZIP64_LOCHDR);
+      if (getInt(locator, 0) == ZIP64_LOCSIG) {
+        long zip64EndPosition = locatorPosition - ZIP64_ENDHDR;
+        byte[] zip64End = new byte[ZIP64_ENDHDR];
+        readFully(zip64EndPosition, zip64End, 0, ZIP64_ENDHDR);
+        if (getInt(zip64End, 0) != ZIP64_ENDSIG) {
+          throw new java.util.zip.ZipException("invalid zip64 END header: " + file);
+        }
+        cenSize = getLong(zip64End, 40);
+        cenOffset = getLong(zip64End, 48);
+        cenPosition = zip64EndPosition - cenSize;
+      }
+    }
+
+    if (cenPosition < 0 || cenSize > Integer.MAX_VALUE) {
+      throw new java.util.zip.ZipException("invalid END header (bad central directory offset): " + file);
+    }
+    centralDirectoryOffset = cenPosition;
+
+    // Offsets may be shifted if some data has been prepended to the archive
+    long shift = cenPosition - cenOffset;
+
+    byte[] cen = new byte[(int) cenSize];
+    readFully(cenPosition, cen, 0, cen.length);
+
+    int pos = 0;
+    while (pos + CENHDR <= cen.length) {
+      if (getInt(cen, pos) != CENSIG) {
+        throw new java.util.zip.ZipException("invalid CEN header (bad signature): " + file);
+      }
+      int flag = getShort(cen, pos + 8);
+      int nameLength = getShort(cen, pos + 28);
+      int extraLength = getShort(cen, pos + 30);
+      int commentLength = getShort(cen, pos + 32);
+      if (pos + CENHDR + nameLength + extraLength + commentLength > cen.length) {
+        throw new java.util.zip.ZipException("invalid CEN header (bad header size): " + file);
+      }
+
+      byte[] rawName = copyOf(cen, pos + CENHDR, nameLength);
+      byte[] extra = copyOf(cen, pos + CENHDR + nameLength, extraLength);
+      byte[] rawComment = copyOf(cen, pos + CENHDR + nameLength + extraLength, commentLength);
+
+      long size = getInt(cen, pos + 24);
+      long compressedSize = getInt(cen, pos + 20);
+      long localHeaderOffset = getInt(cen, pos + 42);
+      if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+        int off = findExtraField(extra, ZIP64_EXTID);
+        if (off >= 0) {
+          int dataEnd = off + 4 + getShort(extra, off + 2);
+          int p = off + 4;
+          if (size == ZIP64_MAGIC && p + 8 <= dataEnd) {
+            size = getLong(extra, p);
+            p += 8;
+          }
+          if (compressedSize == ZIP64_MAGIC && p + 8 <= dataEnd) {
+            compressedSize = getLong(extra, p);
+            p += 8;
+          }
+          if (localHeaderOffset == ZIP64_MAGIC && p + 8 <= dataEnd) {
+            localHeaderOffset = getLong(extra, p);
+          }
+        }
+      }
+
+      Charset cs = (flag & FLAG_UTF8) != 0 ? UTF8 : charset;
+      ZipRawEntry entry = new ZipRawEntry(this, decode(rawName, cs), rawName,
+          getShort(cen, pos + 4), getShort(cen, pos + 6), flag, getShort(cen, pos + 10),
+          getInt(cen, pos + 12), getInt(cen, pos + 16), compressedSize, size,
+          extra, rawComment, decode(rawComment, cs),
+          getShort(cen, pos + 36), getInt(cen, pos + 38), localHeaderOffset + shift);
+      entries.add(entry);
+      // the last entry of a repeated name wins, like in ZipFile
+      entriesByName.put(entry.getName(), entry);
+
+      pos += CENHDR + nameLength + extraLength + commentLength;
+    }
+  }
+
+  /* Helpers for reading and writing little-endian values. */
+
+  static int getShort(byte[] b, int off) {
+    return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+  }
+
+  static long getInt(byte[] b, int off) {
+    return (getShort(b, off) | ((long) getShort(b, off + 2) << 16)) & 0xFFFFFFFFL;
+  }
+
+  static long getLong(byte[] b, int off) {
+    return getInt(b, off) | (getInt(b, off + 4) << 32);
+  }
+
+  static void putShort(byte[] b, int off, int value) {
+    b[off] = (byte) value;
+    b[off + 1] = (byte) (value >> 8);
+  }
+
+  static void putInt(byte[] b, int off, long value) {
+    putShort(b, off, (int) (value & 0xFFFF));
+    putShort(b, off + 2, (int) ((value >> 16) & 0xFFFF));
+  }
+
+  static void putLong(byte[] b, int off, long value) {
+    putInt(b, off, value & 0xFFFFFFFFL);
+    putInt(b, off + 4, value >>> 32);
+  }
+
+  /**
+   * @return offset of the extra field block with the given header id or -1 if not found.
+   */
+  static int findExtraField(byte[] extra, int headerId) {
+    int off = 0;
+    while (off + 4 <= extra.length) {
+      if (getShort(extra, off) == headerId) {
+        return off;
+      }
+      off += 4 + getShort(extra, off + 2);
+    }
+    return -1;
+  }
+
+  static byte[] copyOf(byte[] b, int off, int len) {
+    byte[] result = new byte[len];
+    System.arraycopy(b, off, result, 0, len);
+    return result;
+  }
+
+  static String decode(byte[] b, Charset charset) {
+    if (b.length == 0) {
+      return "";
+    }
+    return charset.decode(ByteBuffer.wrap(b)).toString();
+  }
+
+  static byte[] encode(String s, Charset charset) {
+    ByteBuffer buffer = charset.encode(s);
+    byte[] result = new byte[buffer.remaining()];
+    buffer.get(result);
+    return result;
+  }
+
+  /**
+   * Converts MS-DOS date and time (date in high 16 bits) into Java time.
+   */
+  static long dosToJavaTime(long dosTime) {
+    Calendar cal = Calendar.getInstance();
+    cal.clear();
+    cal.set((int) ((dosTime >> 25) & 0x7f) + 1980,
+        (int) ((dosTime >> 21) & 0x0f) - 1,
+        (int) ((dosTime >> 16) & 0x1f),
+        (int) ((dosTime >> 11) & 0x1f),
+        (int) ((dosTime >> 5) & 0x3f),
+        (int) ((dosTime << 1) & 0x3e));
+    return cal.getTimeInMillis();
+  }
+
+  /**
+   * Converts Java time into MS-DOS date and time (date in high 16 bits).
+   */
+  static long javaToDosTime(long time) {
+    Calendar cal = Calendar.getInstance();
+    cal.setTimeInMillis(time);
+    int year = cal.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return ((long) (year - 1980) << 25)
+        | ((cal.get(Calendar.MONTH) + 1) << 21)
+        | (cal.get(Calendar.DAY_OF_MONTH) << 16)
+        | (cal.get(Calendar.HOUR_OF_DAY) << 11)
+        | (cal.get(Calendar.MINUTE) << 5)
+        | (cal.get(Calendar.SECOND) >> 1);
+  }
+
+  /**
+   * Returns an input stream of the uncompressed contents of an entry.
+   *
+   * @param raw
+   *          compressed data of the entry.
+   * @param compressedSize
+   *          length of the compressed data.
+   * @param method
+   *          compression method of the entry.
+   * @param name
+   *          name of the entry for error messages.
+   */
+  static InputStream inflate(InputStream raw, long compressedSize, int method, String name) throws IOException {
+    if (method == ZipEntry.STORED) {
+      return raw;
+    }
+    if (method == ZipEntry.DEFLATED) {
+      int size = (int) Math.max(1, Math.min(BUFFER_SIZE, compressedSize));
+      return new EntryInflaterInputStream(raw, size);
+    }
+    throw new java.util.zip.ZipException("invalid compression method " + method + " of entry " + name);
+  }
+
+  /**
+   * Reads a region of a file.
+   */
+  static class ChannelInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    private final File file;
+
+    private long position;
+
+    private long remaining;
+
+    ChannelInputStream(FileChannel channel, File file, long position, long length) {
+      this.channel = channel;
+      this.file = file;
+      this.position = position;
+      this.remaining = length;
+    }
+
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      if (len == 0) {
+        return 0;
+      }
+      len = (int) Math.min(len, remaining);
+      int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+      if (n < 0) {
+        throw new EOFException("Unexpected end of ZIP file " + file);
+      }
+      position += n;
+      remaining -= n;
+      return n;
+    }
+
+    public long skip(long n) {
+      n = Math.max(0, Math.min(n, remaining));
+      position += n;
+      remaining -= n;
+      return n;
+    }
+
+    public int available() {
+      return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+  }
+
+  /**
+   * Inflates the raw entry data. As required by the <code>nowrap</code> mode
+   * of {@link Inflater} an extra dummy byte is provided after the input.
+   */
+  private static class EntryInflaterInputStream extends InflaterInputStream {
+
+    private boolean eof;
+
+    private boolean closed;
+
+    EntryInflaterInputStream(InputStream in, int size) {
+      super(in, ZipCodecPool.acquireInflater(), size);
+    }
+
+    protected void fill() throws IOException {
+      if (eof) {
+        throw new EOFException("Unexpected end of ZLIB input stream");
+      }
+      len = in.read(buf, 0, buf.length);
+      if (len == -1) {
+        buf[0] = 0;
+        len = 1;
+        eof = true;
+      }
+      inf.setInput(buf, 0, len);
+    }
+
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        try {
+          super.close();
+        }
+        finally {
+          ZipCodecPool.release(inf);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Uncompressed contents of an entry, opened on the first access.
+   */
+  private class EntryInputStream extends InputStream {
+
+    private final ZipRawEntry entry;
+
+    private InputStream in;
+
+    private boolean closed;
+
+    /**
+     * Whether the stream holds a reference to the file.
+     */
+    private final boolean retained;
+
+    EntryInputStream(ZipRawEntry entry) {
+      this(entry, false);
+    }
+
+    EntryInputStream(ZipRawEntry entry, boolean retained) {
+      this.entry = entry;
+      this.retained = retained;
+    }
+
+    private InputStream in() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (in == null) {
+        in = inflate(getRawInputStream(entry), entry.getRawCompressedSize(), entry.getRawMethod(), entry.getName());
+      }
+      return in;
+    }
+
+    public int read() throws IOException {
+      return in().read();
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      return in().read(b, off, len);
+    }
+
+    public long skip(long n) throws IOException {
+      return in().skip(n);
+    }
+
+    public int available() throws IOException {
+      return in().available();
+    }
+
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (in != null) {
+          in.close();
+        }
+      }
+      finally {
+        if (retained) {
+          ZipRawFile.this.close();
+        }
+      }
+    }
+
+  }
+
+}
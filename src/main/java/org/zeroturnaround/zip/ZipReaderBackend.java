@@ -0,0 +1,72 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.File;
+
+/**
+ * Implementations used by the read-only methods of {@link ZipUtil} which traverse or compare
+ * ZIP files, i.e. {@link ZipUtil#iterate(File, ZipEntryCallback)},
+ * {@link ZipUtil#iterate(File, ZipInfoCallback)}, their variants with entry names and
+ * {@link ZipUtil#archiveEquals(File, File)}.
+ *
+ * @since 1.9
+ */
+public enum ZipReaderBackend {
+
+  /**
+   * Uses {@link java.util.zip.ZipFile} (default).
+   */
+  ZIP_FILE,
+
+  /**
+   * Maps the ZIP file into memory and parses it directly from there. No {@link java.util.zip.ZipEntry}
+   * is created for an entry unless it's passed to a callback, and the stored entries are read without
+   * copying them. Files larger than 2 GB are read using {@link #ZIP_FILE}.
+   * <p>
+   * As the mappings are only released by the garbage collector, the ZIP files may stay locked
+   * on some platforms (e.g. Windows) for a while after they have been read. A ZIP file must not be
+   * truncated by another process while it's being read.
+   */
+  MAPPED;
+
+  private static volatile ZipReaderBackend defaultBackend = ZIP_FILE;
+
+  /**
+   * @return the backend currently used.
+   */
+  public static ZipReaderBackend getDefault() {
+    return defaultBackend;
+  }
+
+  /**
+   * Sets the backend used from now on.
+   *
+   * @param backend
+   *          the backend to use, <code>null</code> restores {@link #ZIP_FILE}.
+   */
+  public static void setDefault(ZipReaderBackend backend) {
+    defaultBackend = backend == null ? ZIP_FILE : backend;
+  }
+
+  /**
+   * @return <code>true</code> if the given file should be read using {@link ZipMappedFile}.
+   */
+  static boolean isMapped(File zip) {
+    return defaultBackend == MAPPED && ZipMappedFile.canMap(zip);
+  }
+
+}
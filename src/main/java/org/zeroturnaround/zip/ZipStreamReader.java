@@ -0,0 +1,467 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * Reads the entries of a ZIP stream like {@link java.util.zip.ZipInputStream}, but skips the
+ * entries which are not read.
+ * <p>
+ * If the sizes of an entry are given in its local header, the compressed data of an entry is
+ * skipped without inflating it. Otherwise (the sizes are only given in the data descriptor after
+ * the data) the entry has to be inflated to find its end.
+ */
+class ZipStreamReader {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final PushbackInputStream in;
+
+  private final Charset charset;
+
+  private final byte[] header = new byte[ZipRawFile.LOCHDR];
+
+  /**
+   * Current entry, <code>null</code> if not started or already finished.
+   */
+  private ZipEntry entry;
+
+  private int flag;
+
+  private int method;
+
+  /**
+   * Whether the local header of the current entry has a ZIP64 extra field, then the data
+   * descriptor has 8-byte sizes (as well as if the sizes don't fit into 4 bytes).
+   */
+  private boolean zip64;
+
+  /**
+   * Number of compressed bytes of the current entry not read yet, -1 if the size is unknown.
+   */
+  private long remaining;
+
+  /**
+   * Contents of the current entry, <code>null</code> if not opened.
+   */
+  private CheckedEntryInputStream entryIn;
+
+  /**
+   * @param in ZIP stream, it's not closed by this reader.
+   * @param charset charset of the entry names, <code>null</code> means UTF-8.
+   */
+  ZipStreamReader(InputStream in, Charset charset) {
+    this.in = new PushbackInputStream(new BufferedInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+    this.charset = charset == null ? ZipRawFile.UTF8 : charset;
+  }
+
+  /**
+   * Skips the rest of the current entry and reads the local header of the next one.
+   *
+   * @return the next entry or <code>null</code> if there are no more entries.
+   */
+  ZipEntry getNextEntry() throws IOException {
+    if (entry != null) {
+      closeEntry();
+    }
+    if (!readHeader(header, 0, 4) || ZipRawFile.getInt(header, 0) != ZipRawFile.LOCSIG) {
+      // end of stream or the central directory
+      return null;
+    }
+    readFully(header, 4, ZipRawFile.LOCHDR - 4);
+
+    flag = ZipRawFile.getShort(header, 6);
+    method = ZipRawFile.getShort(header, 8);
+    byte[] rawName = new byte[ZipRawFile.getShort(header, 26)];
+    byte[] extra = new byte[ZipRawFile.getShort(header, 28)];
+    readFully(rawName, 0, rawName.length);
+    readFully(extra, 0, extra.length);
+
+    Charset cs = (flag & ZipRawFile.FLAG_UTF8) != 0 ? ZipRawFile.UTF8 : charset;
+    ZipEntry result = new ZipEntry(ZipRawFile.decode(rawName, cs));
+    if (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) {
+      result.setMethod(method);
+    }
+    result.setTime(ZipRawFile.dosToJavaTime(ZipRawFile.getInt(header, 10)));
+    if (extra.length > 0) {
+      result.setExtra(extra);
+    }
+
+    int zip64Off = ZipRawFile.findExtraField(extra, ZipRawFile.ZIP64_EXTID);
+    zip64 = zip64Off >= 0;
+    if ((flag & ZipRawFile.FLAG_DATA_DESCRIPTOR) == 0) {
+      long size = ZipRawFile.getInt(header, 22);
+      long compressedSize = ZipRawFile.getInt(header, 18);
+      if (zip64) {
+        int p = zip64Off + 4;
+        int end = p + ZipRawFile.getShort(extra, zip64Off + 2);
+        if (size == ZipRawFile.ZIP64_MAGIC && p + 8 <= end) {
+          size = ZipRawFile.getLong(extra, p);
+          p += 8;
+        }
+        if (compressedSize == ZipRawFile.ZIP64_MAGIC && p + 8 <= end) {
+          compressedSize = ZipRawFile.getLong(extra, p);
+        }
+      }
+      result.setCrc(ZipRawFile.getInt(header, 14));
+      result.setSize(size);
+      result.setCompressedSize(compressedSize);
+      remaining = compressedSize;
+    }
+    else if (method == ZipEntry.DEFLATED) {
+      remaining = -1;
+    }
+    else {
+      throw new java.util.zip.ZipException("only DEFLATED entries can have EXT descriptor: " + result.getName());
+    }
+
+    entry = result;
+    entryIn = null;
+    return result;
+  }
+
+  /**
+   * Returns the uncompressed contents of the current entry. Closing the stream does not close
+   * the ZIP stream.
+   */
+  InputStream getInputStream() throws IOException {
+    if (entry == null) {
+      throw new IllegalStateException("No current entry");
+    }
+    if (entryIn == null) {
+      if ((flag & 1) != 0) {
+        throw new java.util.zip.ZipException("encrypted ZIP entry not supported: " + entry.getName());
+      }
+      InputStream data;
+      if (remaining >= 0) {
+        data = ZipRawFile.inflate(new CompressedInputStream(), remaining, method, entry.getName());
+      }
+      else {
+        data = new DescriptorInflaterInputStream();
+      }
+      entryIn = new CheckedEntryInputStream(data);
+    }
+    return entryIn;
+  }
+
+  /**
+   * Releases the current entry (e.g. its pooled {@link Inflater}) without reading the rest of it.
+   * The ZIP stream is not closed, no more entries can be read afterwards.
+   */
+  void close() throws IOException {
+    try {
+      if (entryIn != null) {
+        entryIn.release();
+      }
+    }
+    finally {
+      entry = null;
+      entryIn = null;
+    }
+  }
+
+  /**
+   * Skips the rest of the current entry.
+   */
+  private void closeEntry() throws IOException {
+    try {
+      if (remaining >= 0) {
+        // the size is known, no need to inflate the rest
+        skipFully(remaining);
+        remaining = 0;
+      }
+      else {
+        InputStream data = getInputStream();
+        byte[] buffer = IOUtils.acquireCopyBuffer();
+        try {
+          while (data.read(buffer) != -1) {
+            // inflate until the data descriptor is found
+          }
+        }
+        finally {
+          IOUtils.releaseCopyBuffer(buffer);
+        }
+      }
+    }
+    finally {
+      if (entryIn != null) {
+        entryIn.release();
+      }
+      entry = null;
+      entryIn = null;
+    }
+  }
+
+  /**
+   * Reads the data descriptor following the compressed data of the current entry.
+   */
+  private void readDataDescriptor(long compressedSize, long size) throws IOException {
+    byte[] b = new byte[20];
+    readFully(b, 0, 4);
+    if (ZipRawFile.getInt(b, 0) == ZipRawFile.EXTSIG) {
+      // the signature is optional
+      readFully(b, 0, 4);
+    }
+    long crc = ZipRawFile.getInt(b, 0);
+    long actualCompressedSize;
+    long actualSize;
+    if (zip64 || compressedSize >= ZipRawFile.ZIP64_MAGIC || size >= ZipRawFile.ZIP64_MAGIC) {
+      readFully(b, 4, 16);
+      actualCompressedSize = ZipRawFile.getLong(b, 4);
+      actualSize = ZipRawFile.getLong(b, 12);
+    }
+    else {
+      readFully(b, 4, 8);
+      actualCompressedSize = ZipRawFile.getInt(b, 4);
+      actualSize = ZipRawFile.getInt(b, 8);
+    }
+    if (actualCompressedSize != compressedSize) {
+      throw new java.util.zip.ZipException("invalid entry compressed size (expected " + actualCompressedSize
+          + " but got " + compressedSize + " bytes)");
+    }
+    entry.setCrc(crc);
+    entry.setSize(actualSize);
+    entry.setCompressedSize(actualCompressedSize);
+    if (actualSize != size) {
+      throw new java.util.zip.ZipException("invalid entry size (expected " + actualSize + " but got " + size + " bytes)");
+    }
+  }
+
+  /**
+   * @return <code>false</code> if the stream ended before the first byte.
+   */
+  private boolean readHeader(byte[] b, int off, int len) throws IOException {
+    int n = in.read(b, off, len);
+    if (n == -1) {
+      return false;
+    }
+    readFully(b, off + n, len - n);
+    return true;
+  }
+
+  private void readFully(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = in.read(b, off, len);
+      if (n == -1) {
+        throw new EOFException("Unexpected end of ZIP stream");
+      }
+      off += n;
+      len -= n;
+    }
+  }
+
+  private void skipFully(long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        // skip() may give up before the end of the stream
+        if (in.read() == -1) {
+          throw new EOFException("Unexpected end of ZIP stream");
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
+  /**
+   * Compressed data of an entry with a known size.
+   */
+  private class CompressedInputStream extends InputStream {
+
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      if (len == 0) {
+        return 0;
+      }
+      int n = in.read(b, off, (int) Math.min(len, remaining));
+      if (n == -1) {
+        throw new EOFException("Unexpected end of ZIP stream");
+      }
+      remaining -= n;
+      return n;
+    }
+
+    public int available() throws IOException {
+      return (int) Math.min(remaining, in.available());
+    }
+
+    public void close() {
+      // the ZIP stream stays open
+    }
+
+  }
+
+  /**
+   * Inflates an entry with an unknown size. The bytes read after the end of the compressed data are
+   * pushed back, so the data descriptor can be read.
+   */
+  private class DescriptorInflaterInputStream extends InputStream {
+
+    private final Inflater inf = ZipCodecPool.acquireInflater();
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+
+    private int bufLength;
+
+    private boolean eof;
+
+    private boolean closed;
+
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (eof) {
+        return -1;
+      }
+      if (len == 0) {
+        return 0;
+      }
+      try {
+        while (true) {
+          int n = inf.inflate(b, off, len);
+          if (n > 0) {
+            return n;
+          }
+          if (inf.finished() || inf.needsDictionary()) {
+            finish();
+            return -1;
+          }
+          if (inf.needsInput()) {
+            bufLength = in.read(buf, 0, buf.length);
+            if (bufLength == -1) {
+              throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            inf.setInput(buf, 0, bufLength);
+          }
+        }
+      }
+      catch (DataFormatException e) {
+        String s = e.getMessage();
+        throw new java.util.zip.ZipException(s != null ? s : "Invalid ZLIB data format");
+      }
+    }
+
+    private void finish() throws IOException {
+      eof = true;
+      int unused = inf.getRemaining();
+      if (unused > 0) {
+        in.unread(buf, bufLength - unused, unused);
+      }
+      readDataDescriptor(inf.getBytesRead(), inf.getBytesWritten());
+    }
+
+    public void close() {
+      if (!closed) {
+        closed = true;
+        ZipCodecPool.release(inf);
+      }
+    }
+
+  }
+
+  /**
+   * Checks the size and CRC of the uncompressed data once it has been read.
+   */
+  private class CheckedEntryInputStream extends InputStream {
+
+    private final InputStream data;
+
+    private final ZipEntry current;
+
+    private final CRC32 crc = new CRC32();
+
+    private long count;
+
+    private boolean eof;
+
+    CheckedEntryInputStream(InputStream data) {
+      this.data = data;
+      this.current = entry;
+    }
+
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (eof || current != entry) {
+        return -1;
+      }
+      int n = data.read(b, off, len);
+      if (n == -1) {
+        eof = true;
+        check();
+        return -1;
+      }
+      crc.update(b, off, n);
+      count += n;
+      return n;
+    }
+
+    public int available() throws IOException {
+      return eof || current != entry ? 0 : data.available();
+    }
+
+    private void check() throws java.util.zip.ZipException {
+      if (current.getSize() != -1 && current.getSize() != count) {
+        throw new java.util.zip.ZipException("invalid entry size (expected " + current.getSize() + " but got " + count + " bytes)");
+      }
+      if (current.getCrc() != -1 && current.getCrc() != crc.getValue()) {
+        throw new java.util.zip.ZipException("invalid entry CRC (expected 0x" + Long.toHexString(current.getCrc())
+            + " but got 0x" + Long.toHexString(crc.getValue()) + ")");
+      }
+    }
+
+    /**
+     * Does not close the ZIP stream, the rest of the entry is skipped by the next {@link #getNextEntry()}.
+     */
+    public void close() {
+    }
+
+    void release() throws IOException {
+      data.close();
+    }
+
+  }
+
+}
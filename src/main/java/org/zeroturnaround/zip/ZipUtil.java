@@ -23,17 +23,30 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -69,9 +82,69 @@ public final class ZipUtil {
   // Use / instead of . to work around an issue with Maven Shade Plugin
   private static final Logger log = LoggerFactory.getLogger("org/zeroturnaround/zip/ZipUtil".replace('/', '.')); // NOSONAR
 
+  private static volatile boolean verifyTransferredEntries;
+
+  private static volatile boolean syncInPlaceUpdates;
+
   private ZipUtil() {
   }
 
+  /**
+   * Sets whether the new contents of a ZIP file that is changed in place are flushed to the disk
+   * before they replace the original file. This is disabled by default.
+   * <p>
+   * In-place changes are written into a temporary file in the directory of the original file,
+   * which is then renamed over it. Together with this option, the original file is either kept
+   * or replaced with the complete new file if the system crashes during the change. The directory
+   * itself is not synced, so the rename may still be lost.
+   *
+   * @param sync
+   *          <code>true</code> if the new file should be synced before the rename.
+   *
+   * @see #removeEntry(File, String)
+   * @see #addEntry(File, String, File)
+   * @see Zips#process()
+   * @since 1.9
+   */
+  public static void setSyncInPlaceUpdates(boolean sync) {
+    syncInPlaceUpdates = sync;
+  }
+
+  /**
+   * @return <code>true</code> if the new contents of a ZIP file changed in place are synced before replacing it.
+   *
+   * @see #setSyncInPlaceUpdates(boolean)
+   * @since 1.9
+   */
+  public static boolean isSyncInPlaceUpdates() {
+    return syncInPlaceUpdates;
+  }
+
+  /**
+   * Sets whether stored entries that are unpacked by copying their data directly from the ZIP file
+   * into the target file are read once more to check their CRC. This is disabled by default
+   * as {@link ZipFile} does not check the CRC of stored entries either.
+   *
+   * @param verify
+   *          <code>true</code> if the CRC should be checked.
+   *
+   * @see #unpack(File, File)
+   * @since 1.9
+   */
+  public static void setVerifyTransferredEntries(boolean verify) {
+    verifyTransferredEntries = verify;
+  }
+
+  /**
+   * @return <code>true</code> if the CRC of stored entries is checked after they are copied directly into a file.
+   *
+   * @see #setVerifyTransferredEntries(boolean)
+   * @since 1.9
+   */
+  public static boolean isVerifyTransferredEntries() {
+    return verifyTransferredEntries;
+  }
+
   /* Extracting single entries from ZIP files. */
 
   /**
@@ -84,16 +157,25 @@ public final class ZipUtil {
    * @return <code>true</code> if the ZIP file contains the given entry.
    */
   public static boolean containsEntry(File zip, String name) {
+    ZipIndex index = ZipIndex.openIfEnabled(zip);
+    if (index != null) {
+      try {
+        return index.containsEntry(name);
+      }
+      finally {
+        closeQuietly(index);
+      }
+    }
     ZipFile zf = null;
     try {
-      zf = new ZipFile(zip);
+      zf = ZipFileCache.open(zip);
       return zf.getEntry(name) != null;
     }
     catch (IOException e) {
       throw ZipExceptionUtil.rethrow(e);
     }
     finally {
-      closeQuietly(zf);
+      ZipFileCache.release(zf);
     }
   }
 
@@ -108,9 +190,18 @@ public final class ZipUtil {
    * the ZIP file does not contain the given entry.
    */
   public static int getCompressionLevelOfEntry(File zip, String name) {
+    ZipIndex index = ZipIndex.openIfEnabled(zip);
+    if (index != null) {
+      try {
+        return index.getCompressionMethod(name);
+      }
+      finally {
+        closeQuietly(index);
+      }
+    }
     ZipFile zf = null;
     try {
-      zf = new ZipFile(zip);
+      zf = ZipFileCache.open(zip);
       ZipEntry zipEntry = zf.getEntry(name);
       if(zipEntry == null) {
         return -1;
@@ -121,7 +212,7 @@ public final class ZipUtil {
       throw ZipExceptionUtil.rethrow(e);
     }
     finally {
-      closeQuietly(zf);
+      ZipFileCache.release(zf);
     }
   }
 
@@ -136,9 +227,23 @@ public final class ZipUtil {
    *         entries.
    */
   public static boolean containsAnyEntry(File zip, String[] names) {
+    ZipIndex index = ZipIndex.openIfEnabled(zip);
+    if (index != null) {
+      try {
+        for (int i = 0; i < names.length; i++) {
+          if (index.containsEntry(names[i])) {
+            return true;
+          }
+        }
+        return false;
+      }
+      finally {
+        closeQuietly(index);
+      }
+    }
     ZipFile zf = null;
     try {
-      zf = new ZipFile(zip);
+      zf = ZipFileCache.open(zip);
       for (int i = 0; i < names.length; i++) {
         if (zf.getEntry(names[i]) != null) {
           return true;
@@ -150,7 +255,7 @@ public final class ZipUtil {
       throw ZipExceptionUtil.rethrow(e);
     }
     finally {
-      closeQuietly(zf);
+      ZipFileCache.release(zf);
     }
   }
 
@@ -164,16 +269,25 @@ public final class ZipUtil {
    * @return contents of the entry or <code>null</code> if it was not found.
    */
   public static byte[] unpackEntry(File zip, String name) {
+    ZipIndex index = ZipIndex.openIfEnabled(zip);
+    if (index != null) {
+      try {
+        return index.unpackEntry(name);
+      }
+      finally {
+        closeQuietly(index);
+      }
+    }
     ZipFile zf = null;
     try {
-      zf = new ZipFile(zip);
+      zf = ZipFileCache.open(zip);
       return doUnpackEntry(zf, name);
     }
     catch (IOException e) {
       throw ZipExceptionUtil.rethrow(e);
     }
     finally {
-      closeQuietly(zf);
+      ZipFileCache.release(zf);
     }
   }
 
@@ -221,6 +335,9 @@ public final class ZipUtil {
 
   /**
    * Unpacks a single entry from a ZIP stream.
+   * <p>
+   * If the stream contains several entries with the same name, the first one is unpacked
+   * (unlike {@link #unpackEntry(File, String)}, which unpacks the last one).
    *
    * @param is
    *          ZIP stream.
@@ -269,14 +386,14 @@ public final class ZipUtil {
   public static boolean unpackEntry(File zip, String name, File file) {
     ZipFile zf = null;
     try {
-      zf = new ZipFile(zip);
+      zf = ZipFileCache.open(zip);
       return doUnpackEntry(zf, name, file);
     }
     catch (IOException e) {
       throw ZipExceptionUtil.rethrow(e);
     }
     finally {
-      closeQuietly(zf);
+      ZipFileCache.release(zf);
     }
   }
 
@@ -333,7 +450,7 @@ public final class ZipUtil {
       return file.mkdirs();
     }
 
-    InputStream in = new BufferedInputStream(zf.getInputStream(ze));
+    InputStream in = zf.getInputStream(ze);
     try {
       FileUtils.copy(in, file);
     }
@@ -345,6 +462,8 @@ public final class ZipUtil {
 
   /**
    * Unpacks a single file from a ZIP stream to a file.
+   * <p>
+   * If the stream contains several entries with the same name, the first one is unpacked.
    *
    * @param is
    *          ZIP stream.
@@ -396,12 +515,17 @@ public final class ZipUtil {
    * @see #iterate(File, ZipInfoCallback)
    */
   public static void iterate(File zip, ZipEntryCallback action) {
+    if (ZipReaderBackend.isMapped(zip)) {
+      iterateMapped(zip, null, action);
+      return;
+    }
     ZipFile zf = null;
     try {
       zf = new ZipFile(zip);
 
       Enumeration<? extends ZipEntry> en = zf.entries();
       while (en.hasMoreElements()) {
+        checkInterrupted();
         ZipEntry e = (ZipEntry) en.nextElement();
 
         InputStream is = zf.getInputStream(e);
@@ -427,6 +551,53 @@ public final class ZipUtil {
     }
   }
 
+  /**
+   * Reads the given ZIP file and executes the given action for each entry like
+   * {@link #iterate(File, ZipEntryCallback)}. The entries passed to the action can be copied
+   * to a {@link ZipRawCopyOutputStream} without recompressing them. The input streams are
+   * only inflated when read.
+   *
+   * @param zip
+   *          input ZIP file.
+   * @param action
+   *          action to be called for each entry.
+   */
+  private static void iterateRaw(File zip, ZipEntryCallback action) {
+    ZipRawFile zf = null;
+    try {
+      zf = new ZipRawFile(zip);
+      iterateRaw(zf, action);
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      closeQuietly(zf);
+    }
+  }
+
+  /**
+   * Same as {@link #iterateRaw(File, ZipEntryCallback)} but for an already opened ZIP file.
+   */
+  private static void iterateRaw(ZipRawFile zf, ZipEntryCallback action) throws IOException {
+    for (ZipRawEntry e : zf.getEntries()) {
+      checkInterrupted();
+      InputStream is = zf.getInputStream(e);
+      try {
+        action.process(is, e);
+      }
+      catch (IOException ze) {
+        throw new ZipException("Failed to process zip entry '" + e.getName() + "' with action " + action, ze);
+      }
+      catch (ZipBreakException ex) {
+        break;
+      }
+      finally {
+        IOUtils.closeQuietly(is);
+      }
+    }
+  }
+
   /**
    * Reads the given ZIP file and executes the given action for each given entry.
    * <p>
@@ -443,11 +614,16 @@ public final class ZipUtil {
    * @see #iterate(File, String[], ZipInfoCallback)
    */
   public static void iterate(File zip, String[] entryNames, ZipEntryCallback action) {
+    if (ZipReaderBackend.isMapped(zip)) {
+      iterateMapped(zip, entryNames, action);
+      return;
+    }
     ZipFile zf = null;
     try {
       zf = new ZipFile(zip);
 
       for (int i = 0; i < entryNames.length; i++) {
+        checkInterrupted();
         ZipEntry e = zf.getEntry(entryNames[i]);
         if (e == null) {
           continue;
@@ -490,12 +666,17 @@ public final class ZipUtil {
    * @see #iterate(File, ZipEntryCallback)
    */
   public static void iterate(File zip, ZipInfoCallback action) {
+    if (ZipReaderBackend.isMapped(zip)) {
+      iterateMapped(zip, null, action);
+      return;
+    }
     ZipFile zf = null;
     try {
       zf = new ZipFile(zip);
 
       Enumeration<? extends ZipEntry> en = zf.entries();
       while (en.hasMoreElements()) {
+        checkInterrupted();
         ZipEntry e = (ZipEntry) en.nextElement();
         try {
           action.process(e);
@@ -532,11 +713,16 @@ public final class ZipUtil {
    * @see #iterate(File, String[], ZipEntryCallback)
    */
   public static void iterate(File zip, String[] entryNames, ZipInfoCallback action) {
+    if (ZipReaderBackend.isMapped(zip)) {
+      iterateMapped(zip, entryNames, action);
+      return;
+    }
     ZipFile zf = null;
     try {
       zf = new ZipFile(zip);
 
       for (int i = 0; i < entryNames.length; i++) {
+        checkInterrupted();
         ZipEntry e = zf.getEntry(entryNames[i]);
         if (e == null) {
           continue;
@@ -560,6 +746,94 @@ public final class ZipUtil {
     }
   }
 
+  /**
+   * Iterates the given entries of a ZIP file using {@link ZipMappedFile}.
+   *
+   * @param zip
+   *          input ZIP file.
+   * @param entryNames
+   *          names of entries to iterate, <code>null</code> means all the entries.
+   * @param action
+   *          action to be called for each entry.
+   */
+  private static void iterateMapped(File zip, String[] entryNames, ZipEntryCallback action) {
+    ZipMappedFile zf = null;
+    try {
+      zf = new ZipMappedFile(zip);
+
+      int count = entryNames == null ? zf.size() : entryNames.length;
+      for (int i = 0; i < count; i++) {
+        checkInterrupted();
+        int index = entryNames == null ? i : zf.indexOf(entryNames[i]);
+        if (index < 0) {
+          continue;
+        }
+        ZipEntry e = zf.getEntry(index);
+        InputStream is = zf.getInputStream(index);
+        try {
+          action.process(is, e);
+        }
+        catch (IOException ze) {
+          throw new ZipException("Failed to process zip entry '" + e.getName() + "' with action " + action, ze);
+        }
+        catch (ZipBreakException ex) {
+          break;
+        }
+        finally {
+          IOUtils.closeQuietly(is);
+        }
+      }
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      closeQuietly(zf);
+    }
+  }
+
+  /**
+   * Scans the given entries of a ZIP file using {@link ZipMappedFile}.
+   *
+   * @param zip
+   *          input ZIP file.
+   * @param entryNames
+   *          names of entries to iterate, <code>null</code> means all the entries.
+   * @param action
+   *          action to be called for each entry.
+   */
+  private static void iterateMapped(File zip, String[] entryNames, ZipInfoCallback action) {
+    ZipMappedFile zf = null;
+    try {
+      zf = new ZipMappedFile(zip);
+
+      int count = entryNames == null ? zf.size() : entryNames.length;
+      for (int i = 0; i < count; i++) {
+        checkInterrupted();
+        int index = entryNames == null ? i : zf.indexOf(entryNames[i]);
+        if (index < 0) {
+          continue;
+        }
+        ZipEntry e = zf.getEntry(index);
+        try {
+          action.process(e);
+        }
+        catch (IOException ze) {
+          throw new ZipException("Failed to process zip entry '" + e.getName() + "' with action " + action, ze);
+        }
+        catch (ZipBreakException ex) {
+          break;
+        }
+      }
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      closeQuietly(zf);
+    }
+  }
+
   /**
    * Reads the given ZIP stream and executes the given action for each entry.
    * <p>
@@ -587,6 +861,7 @@ public final class ZipUtil {
       }
       ZipEntry entry;
       while ((entry = in.getNextEntry()) != null) {
+        checkInterrupted();
         try {
           action.process(in, entry);
         }
@@ -623,6 +898,9 @@ public final class ZipUtil {
    * Reads the given ZIP stream and executes the given action for each given entry.
    * <p>
    * For each given entry the corresponding input stream is also passed to the action. If you want to stop the loop then throw a ZipBreakException.
+   * <p>
+   * The stream is read only until all the given entries are found. If the stream contains several
+   * entries with the same name, the action is executed for the first one only.
    *
    * @param is
    *          input ZIP stream (it will not be closed automatically).
@@ -642,29 +920,30 @@ public final class ZipUtil {
       namesSet.add(entryNames[i]);
     }
     try {
-      ZipInputStream in = null;
-      if (charset == null) {
-        in = new ZipInputStream(new BufferedInputStream(is));
-      }
-      else {
-        in = ZipFileUtil.createZipInputStream(is, charset);
-      }
-      ZipEntry entry;
-      while ((entry = in.getNextEntry()) != null) {
-        if (!namesSet.contains(entry.getName())) {
-          // skip the unnecessary entry
-          continue;
-        }
-        try {
-          action.process(in, entry);
-        }
-        catch (IOException ze) {
-          throw new ZipException("Failed to process zip entry '" + entry.getName() + " with action " + action, ze);
-        }
-        catch (ZipBreakException ex) {
-          break;
+      ZipStreamReader in = new ZipStreamReader(is, charset);
+      try {
+        ZipEntry entry;
+        // stop once all the entries are found
+        while (!namesSet.isEmpty() && (entry = in.getNextEntry()) != null) {
+          if (!namesSet.remove(entry.getName())) {
+            // skip the unnecessary entry without inflating it
+            continue;
+          }
+          try {
+            action.process(in.getInputStream(), entry);
+          }
+          catch (IOException ze) {
+            throw new ZipException("Failed to process zip entry '" + entry.getName() + " with action " + action, ze);
+          }
+          catch (ZipBreakException ex) {
+            break;
+          }
         }
       }
+      finally {
+        // the last entry is not read to its end, release its inflater
+        in.close();
+      }
     }
     catch (IOException e) {
       throw ZipExceptionUtil.rethrow(e);
@@ -706,7 +985,7 @@ public final class ZipUtil {
   public static boolean handle(File zip, String name, ZipEntryCallback action) {
     ZipFile zf = null;
     try {
-      zf = new ZipFile(zip);
+      zf = ZipFileCache.open(zip);
 
       ZipEntry ze = zf.getEntry(name);
       if (ze == null) {
@@ -726,13 +1005,16 @@ public final class ZipUtil {
       throw ZipExceptionUtil.rethrow(e);
     }
     finally {
-      closeQuietly(zf);
+      ZipFileCache.release(zf);
     }
   }
 
   /**
    * Reads the given ZIP stream and executes the given action for a single
    * entry.
+   * <p>
+   * The stream is read only until the entry is found. If the stream contains several entries
+   * with the same name, the action is executed for the first one only.
    *
    * @param is
    *          input ZIP stream (it will not be closed automatically).
@@ -747,7 +1029,7 @@ public final class ZipUtil {
    */
   public static boolean handle(InputStream is, String name, ZipEntryCallback action) {
     SingleZipEntryCallback helper = new SingleZipEntryCallback(name, action);
-    iterate(is, helper);
+    iterate(is, new String[] { name }, helper);
     return helper.found();
   }
 
@@ -812,7 +1094,95 @@ public final class ZipUtil {
    */
   public static void unpack(File zip, File outputDir, NameMapper mapper) {
     log.debug("Extracting '{}' into '{}'.", zip, outputDir);
-    iterate(zip, new Unpacker(outputDir, mapper));
+    iterateRaw(zip, new Unpacker(outputDir, mapper));
+  }
+
+  /**
+   * Unpacks a ZIP file to the given directory using the given executor to write the files concurrently.
+   * <p>
+   * All the directories are created first. The files are inflated and written by the executor
+   * and the permissions of the directories are set once all the files are written.
+   * The executor is not shut down.
+   * <p>
+   * The output directory must not be a file.
+   *
+   * @param zip
+   *          input ZIP file.
+   * @param outputDir
+   *          output directory (created automatically if not found).
+   * @param mapper
+   *          call-back for renaming the entries.
+   * @param executor
+   *          executor used to write the files.
+   */
+  public static void unpack(File zip, File outputDir, NameMapper mapper, ExecutorService executor) {
+    log.debug("Extracting '{}' into '{}' concurrently.", zip, outputDir);
+    ZipRawFile zf = null;
+    ParallelFileWriter writer = new ParallelFileWriter(executor);
+    try {
+      zf = new ZipRawFile(zip);
+
+      // the last entry with the same name wins like when unpacking sequentially
+      Map<File, ZipRawEntry> files = new LinkedHashMap<File, ZipRawEntry>();
+      Map<File, ZipRawEntry> dirs = new LinkedHashMap<File, ZipRawEntry>();
+      Set<File> parentDirs = new HashSet<File>();
+      for (ZipRawEntry e : zf.getEntries()) {
+        String name = mapper.map(e.getName());
+        if (name == null) {
+          continue;
+        }
+        File file = new File(outputDir, name);
+        if (e.isDirectory()) {
+          dirs.put(file, e);
+        }
+        else {
+          files.remove(file);
+          files.put(file, e);
+          parentDirs.add(file.getParentFile());
+        }
+      }
+
+      for (File dir : dirs.keySet()) {
+        FileUtils.forceMkdir(dir);
+      }
+      for (File dir : parentDirs) {
+        FileUtils.forceMkdir(dir);
+      }
+
+      try {
+        for (Map.Entry<File, ZipRawEntry> it : files.entrySet()) {
+          File file = it.getKey();
+          ZipRawEntry e = it.getValue();
+          if (log.isDebugEnabled() && file.exists()) {
+            log.debug("Overwriting file '{}'.", e.getName());
+          }
+          if (isStoredRawEntry(e)) {
+            writer.transfer(e, file, ZipEntryUtil.getZTFilePermissions(e), verifyTransferredEntries);
+          }
+          else {
+            writer.write(zf.getInputStream(e), file, ZipEntryUtil.getZTFilePermissions(e));
+          }
+        }
+        writer.await();
+      }
+      finally {
+        writer.cancel();
+      }
+
+      // set after the files are written, the directories may become read-only
+      for (Map.Entry<File, ZipRawEntry> it : dirs.entrySet()) {
+        ZTFilePermissions permissions = ZipEntryUtil.getZTFilePermissions(it.getValue());
+        if (permissions != null) {
+          ZTFilePermissionsUtil.getDefaultStategy().setPermissions(it.getKey(), permissions);
+        }
+      }
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      closeQuietly(zf);
+    }
   }
 
   /**
@@ -945,7 +1315,13 @@ public final class ZipUtil {
             log.debug("Overwriting file '{}'.", zipEntry.getName());
           }
 
-          FileUtils.copy(in, file);
+          if (isStoredRawEntry(zipEntry)) {
+            ZipRawEntry e = (ZipRawEntry) zipEntry;
+            e.getZipFile().transferTo(e, file, verifyTransferredEntries);
+          }
+          else {
+            FileUtils.copy(in, file);
+          }
         }
 
         ZTFilePermissions permissions = ZipEntryUtil.getZTFilePermissions(zipEntry);
@@ -956,6 +1332,14 @@ public final class ZipUtil {
     }
   }
 
+  /**
+   * @return <code>true</code> if the given entry is read by {@link ZipRawFile} and its data is
+   *         stored uncompressed, so it can be copied directly into a file.
+   */
+  private static boolean isStoredRawEntry(ZipEntry zipEntry) {
+    return zipEntry instanceof ZipRawEntry && ((ZipRawEntry) zipEntry).getRawMethod() == ZipEntry.STORED;
+  }
+
   /**
    * Unwraps entries excluding a single parent dir. If there are multiple roots
    * ZipException is thrown.
@@ -1061,7 +1445,7 @@ public final class ZipUtil {
     try {
       ZipOutputStream out = new ZipOutputStream(result);
       ZipEntry entry = ZipEntryUtil.fromFile(file.getName(), file);
-      InputStream in = new BufferedInputStream(new FileInputStream(file));
+      InputStream in = new FileInputStream(file);
       try {
         ZipEntryUtil.addEntry(entry, in, out);
       }
@@ -1277,9 +1661,10 @@ public final class ZipUtil {
     }
     ZipOutputStream out = null;
     try {
-      out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(targetZip)));
+      out = new ZipRawCopyOutputStream(new BufferedOutputStream(new FileOutputStream(targetZip)));
       out.setLevel(compressionLevel);
       pack(sourceDir, out, mapper, "", true);
+      out.finish();
     }
     catch (IOException e) {
       throw ZipExceptionUtil.rethrow(e);
@@ -1290,18 +1675,207 @@ public final class ZipUtil {
   }
 
   /**
-   * Compresses the given directory and all its sub-directories into a ZIP file.
+   * Compresses the given directory and all its sub-directories into a ZIP file
+   * using the given executor to compress the files concurrently.
+   * <p>
+   * The entries are written in the same order and the resulting file is identical
+   * to the one created by {@link #pack(File, File, NameMapper, int)}.
+   * The executor is not shut down.
+   * <p>
+   * The ZIP file must not be a directory and its parent directory must exist.
    *
-   * @param dir
+   * @param sourceDir
    *          root directory.
-   * @param out
-   *          ZIP output stream.
+   * @param targetZip
+   *          ZIP file that will be created or overwritten.
    * @param mapper
    *          call-back for renaming the entries.
-   * @param pathPrefix
-   *          prefix to be used for the entries.
-   * @param mustHaveChildren
-   *          if true, but directory to pack doesn't have any files, throw an exception.
+   * @param compressionLevel
+   *          compression level
+   * @param executor
+   *          executor used to compress the entries.
+   */
+  public static void pack(File sourceDir, File targetZip, NameMapper mapper, int compressionLevel, ExecutorService executor) {
+    log.debug("Compressing '{}' into '{}' concurrently.", sourceDir, targetZip);
+    if (!sourceDir.exists()) {
+      throw new ZipException("Given file '" + sourceDir + "' doesn't exist!");
+    }
+    ZipOutputStream out = null;
+    try {
+      out = new ParallelZipOutputStream(new BufferedOutputStream(new FileOutputStream(targetZip)), null, executor);
+      out.setLevel(compressionLevel);
+      pack(sourceDir, out, mapper, "", true);
+      out.finish();
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * Compresses the given directory and all its sub-directories into a ZIP file,
+   * deflating files with the same contents only once.
+   * <p>
+   * The contents of the files are hashed while they are compressed. An entry of a file
+   * with the same contents as an earlier one gets a copy of the already compressed data and CRC.
+   * The entries are the same as created by {@link #pack(File, File)}.
+   * <p>
+   * The ZIP file must not be a directory and its parent directory must exist.
+   *
+   * @param rootDir
+   *          root directory.
+   * @param zip
+   *          ZIP file that will be created or overwritten.
+   * @since 1.9
+   */
+  public static void packDeduplicated(File rootDir, File zip) {
+    packDeduplicated(rootDir, zip, IdentityNameMapper.INSTANCE, DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  /**
+   * Compresses the given directory and all its sub-directories into a ZIP file,
+   * deflating files with the same contents only once.
+   * <p>
+   * The ZIP file must not be a directory and its parent directory must exist.
+   *
+   * @param sourceDir
+   *          root directory.
+   * @param targetZip
+   *          ZIP file that will be created or overwritten.
+   * @param mapper
+   *          call-back for renaming the entries.
+   * @param compressionLevel
+   *          compression level
+   *
+   * @see #packDeduplicated(File, File)
+   * @since 1.9
+   */
+  public static void packDeduplicated(File sourceDir, File targetZip, NameMapper mapper, int compressionLevel) {
+    log.debug("Compressing '{}' into '{}' without duplicates.", sourceDir, targetZip);
+    if (!sourceDir.exists()) {
+      throw new ZipException("Given file '" + sourceDir + "' doesn't exist!");
+    }
+    ZipOutputStream out = null;
+    try {
+      out = new DeduplicatingZipOutputStream(targetZip);
+      out.setLevel(compressionLevel);
+      pack(sourceDir, out, mapper, "", true);
+      out.finish();
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * Compresses the given directory and all its sub-directories into a ZIP file, copying the
+   * compressed data of unchanged files from a previous archive of the same directory.
+   * <p>
+   * A file is considered unchanged if the previous archive contains a deflated entry with the same
+   * name, size, modification time (with the two second precision of ZIP files) and permissions.
+   * Only the other files are compressed. If the previous archive was created by
+   * {@link #pack(File, File)}, the result is the same as packing the directory anew.
+   * <p>
+   * The ZIP file must not be a directory and its parent directory must exist. It may be the same
+   * file as the previous archive.
+   *
+   * @param rootDir
+   *          root directory.
+   * @param zip
+   *          ZIP file that will be created or overwritten.
+   * @param previousZip
+   *          previous archive of the directory, if it doesn't exist all the files are compressed.
+   * @since 1.9
+   */
+  public static void packIncremental(File rootDir, File zip, File previousZip) {
+    packIncremental(rootDir, zip, previousZip, IdentityNameMapper.INSTANCE, DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  /**
+   * Compresses the given directory and all its sub-directories into a ZIP file, copying the
+   * compressed data of unchanged files from a previous archive of the same directory.
+   * <p>
+   * The previous archive should have been created with the same name mapper and compression level,
+   * otherwise the result differs from packing the directory anew.
+   *
+   * @param sourceDir
+   *          root directory.
+   * @param targetZip
+   *          ZIP file that will be created or overwritten.
+   * @param previousZip
+   *          previous archive of the directory, if it doesn't exist all the files are compressed.
+   * @param mapper
+   *          call-back for renaming the entries.
+   * @param compressionLevel
+   *          compression level
+   *
+   * @see #packIncremental(File, File, File)
+   * @since 1.9
+   */
+  public static void packIncremental(File sourceDir, File targetZip, File previousZip, NameMapper mapper, int compressionLevel) {
+    if (!previousZip.isFile()) {
+      pack(sourceDir, targetZip, mapper, compressionLevel);
+      return;
+    }
+    log.debug("Compressing '{}' into '{}' reusing '{}'.", new Object[] { sourceDir, targetZip, previousZip });
+    if (!sourceDir.exists()) {
+      throw new ZipException("Given file '" + sourceDir + "' doesn't exist!");
+    }
+    ZipRawFile previous = null;
+    File tmp = null;
+    ZipOutputStream out = null;
+    try {
+      previous = new ZipRawFile(previousZip);
+      boolean inPlace = previousZip.getCanonicalFile().equals(targetZip.getCanonicalFile());
+      File dest = targetZip;
+      if (inPlace) {
+        // the previous archive is read while the new one is written
+        tmp = createInPlaceTempFile(targetZip, "zt-zip-tmp", ".zip");
+        dest = tmp;
+      }
+      IncrementalZipOutputStream incremental = new IncrementalZipOutputStream(new BufferedOutputStream(new FileOutputStream(dest)), previous);
+      out = incremental;
+      out.setLevel(compressionLevel);
+      pack(sourceDir, out, mapper, "", true);
+      out.finish();
+      out.close();
+      log.debug("Copied {} unchanged entries from '{}'.", incremental.getCopiedEntries(), previousZip);
+
+      if (inPlace) {
+        closeQuietly(previous);
+        previous = null;
+        replaceInPlace(tmp, targetZip);
+      }
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+      closeQuietly(previous);
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  /**
+   * Compresses the given directory and all its sub-directories into a ZIP file.
+   *
+   * @param dir
+   *          root directory.
+   * @param out
+   *          ZIP output stream.
+   * @param mapper
+   *          call-back for renaming the entries.
+   * @param pathPrefix
+   *          prefix to be used for the entries.
+   * @param mustHaveChildren
+   *          if true, but directory to pack doesn't have any files, throw an exception.
    */
   private static void pack(File dir, ZipOutputStream out, NameMapper mapper, String pathPrefix, boolean mustHaveChildren) throws IOException {
     String[] filenames = dir.list();
@@ -1317,9 +1891,12 @@ public final class ZipUtil {
     }
 
     for (int i = 0; i < filenames.length; i++) {
+      checkInterrupted();
       String filename = filenames[i];
       File file = new File(dir, filename);
-      boolean isDir = file.isDirectory();
+      // all the metadata of the entry is read at once
+      ZTFileAttributes attributes = ZTFilePermissionsUtil.readAttributes(file);
+      boolean isDir = attributes.isDirectory();
       String path = pathPrefix + file.getName(); // NOSONAR
       if (isDir) {
         path += PATH_SEPARATOR; // NOSONAR
@@ -1327,8 +1904,16 @@ public final class ZipUtil {
 
       // Create a ZIP entry
       String name = mapper.map(path);
-      if (name != null) {
-        ZipEntry zipEntry = ZipEntryUtil.fromFile(name, file);
+      if (name != null && out instanceof ParallelZipOutputStream) {
+        // the entry is created and compressed by the executor
+        ((ParallelZipOutputStream) out).submitEntry(new FileSource(name, file, attributes));
+      }
+      else if (name != null && !isDir && out instanceof ZipRawCopyOutputStream) {
+        // may reuse data compressed before
+        ((ZipRawCopyOutputStream) out).putFile(ZipEntryUtil.fromFile(name, attributes), file);
+      }
+      else if (name != null) {
+        ZipEntry zipEntry = ZipEntryUtil.fromFile(name, attributes);
 
         out.putNextEntry(zipEntry);
 
@@ -1714,7 +2299,7 @@ public final class ZipUtil {
 
       ZipOutputStream out = null;
       try {
-        out = new ZipOutputStream(destOut);
+        out = new ZipRawCopyOutputStream(destOut);
         copyEntries(zip, out);
         for (int i = 0; i < entries.length; i++) {
           addEntry(entries[i], out);
@@ -1743,6 +2328,120 @@ public final class ZipUtil {
     });
   }
 
+  /**
+   * Changes a zip file, appends one new entry in-place without copying the existing entries.
+   *
+   * @param zip
+   *          an existing ZIP file.
+   * @param entry
+   *          new ZIP entry appended.
+   *
+   * @see #appendEntries(File, ZipEntrySource[])
+   * @since 1.9
+   */
+  public static void appendEntry(File zip, ZipEntrySource entry) {
+    appendEntries(zip, new ZipEntrySource[] { entry });
+  }
+
+  /**
+   * Changes a zip file, appends new entries in-place without copying the existing entries.
+   * <p>
+   * The new entries are written over the central directory of the archive, which is then
+   * written anew after them. Thus the cost of appending depends on the size of the new entries and
+   * the central directory only, not on the size of the archive. The archive comment is dropped.
+   * <p>
+   * Unlike {@link #addEntries(File, ZipEntrySource[])}, the file is changed directly instead of
+   * being replaced with a new one. If appending fails, the original central directory is restored,
+   * but the archive may be left broken if the process or the system crashes in the meantime.
+   *
+   * @param zip
+   *          an existing ZIP file.
+   * @param entries
+   *          new ZIP entries appended.
+   * @throws ZipException
+   *          if an entry with the same name already exists.
+   * @since 1.9
+   */
+  public static void appendEntries(File zip, ZipEntrySource[] entries) {
+    if (log.isDebugEnabled()) {
+      log.debug("Appending " + Arrays.asList(entries) + " to '" + zip + "'.");
+    }
+
+    ZipRawFile zf = null;
+    RandomAccessFile raf = null;
+    try {
+      zf = new ZipRawFile(zip);
+      for (int i = 0; i < entries.length; i++) {
+        if (zf.getEntry(entries[i].getPath()) != null) {
+          throw new ZipException("Entry '" + entries[i].getPath() + "' already exists in " + zip);
+        }
+      }
+
+      ZipFileCache.invalidate(zip);
+      raf = new RandomAccessFile(zip, "rw");
+      long cenOffset = zf.getCentralDirectoryOffset();
+
+      // keep the central directory and the END header in case appending fails
+      byte[] tail = new byte[(int) (raf.length() - cenOffset)];
+      raf.seek(cenOffset);
+      raf.readFully(tail);
+      raf.seek(cenOffset);
+
+      ZipRawCopyOutputStream out = null;
+      boolean appended = false;
+      try {
+        out = new ZipRawCopyOutputStream(new BufferedOutputStream(Channels.newOutputStream(raf.getChannel())), null, cenOffset);
+        for (ZipRawEntry e : zf.getEntries()) {
+          out.keepRawEntry(e);
+        }
+        for (int i = 0; i < entries.length; i++) {
+          addEntry(entries[i], out);
+        }
+        out.finish();
+        raf.setLength(raf.getFilePointer());
+        if (syncInPlaceUpdates) {
+          raf.getFD().sync();
+        }
+        appended = true;
+      }
+      finally {
+        // also closes the file
+        IOUtils.closeQuietly(out);
+        if (!appended) {
+          // closing finishes the broken archive, so the original end is written back only afterwards
+          closeQuietly(raf);
+          restoreTail(zip, cenOffset, tail);
+        }
+      }
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      closeQuietly(zf);
+      closeQuietly(raf);
+    }
+  }
+
+  /**
+   * Writes back the original end of a file after appending to it has failed.
+   */
+  private static void restoreTail(File zip, long offset, byte[] tail) {
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(zip, "rw");
+      raf.seek(offset);
+      raf.write(tail);
+      raf.setLength(offset + tail.length);
+    }
+    catch (IOException e) {
+      log.error("Failed to restore the central directory of a ZIP file", e);
+    }
+    finally {
+      closeQuietly(raf);
+    }
+  }
+
   /**
    * Copies an existing ZIP file and removes entry with a given path.
    *
@@ -1794,8 +2493,9 @@ public final class ZipUtil {
 
     ZipOutputStream out = null;
     try {
-      out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
+      out = new ZipRawCopyOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
       copyEntries(zip, out, new HashSet<String>(Arrays.asList(paths)));
+      out.finish();
     }
     catch (IOException e) {
       throw ZipExceptionUtil.rethrow(e);
@@ -1834,7 +2534,7 @@ public final class ZipUtil {
   private static void copyEntries(File zip, final ZipOutputStream out) {
     // this one doesn't call copyEntries with ignoredEntries, because that has poorer performance
     final Set<String> names = new HashSet<String>();
-    iterate(zip, new ZipEntryCallback() {
+    iterateRaw(zip, new ZipEntryCallback() {
       public void process(InputStream in, ZipEntry zipEntry) throws IOException {
         String entryName = zipEntry.getName();
         if (names.add(entryName)) {
@@ -1858,67 +2558,58 @@ public final class ZipUtil {
    *          paths of entries not to copy
    */
   private static void copyEntries(File zip, final ZipOutputStream out, final Set<String> ignoredEntries) {
-    final Set<String> names = new HashSet<String>();
-    final Set<String> dirNames = filterDirEntries(zip, ignoredEntries);
-    iterate(zip, new ZipEntryCallback() {
-      public void process(InputStream in, ZipEntry zipEntry) throws IOException {
-        String entryName = zipEntry.getName();
-        if (ignoredEntries.contains(entryName)) {
-          return;
-        }
-
-        for(String dirName: dirNames) {
-          if (entryName.startsWith(dirName)) {
+    ZipRawFile zf = null;
+    try {
+      zf = new ZipRawFile(zip);
+      final Set<String> names = new HashSet<String>();
+      final ZipPathPrefixes dirNames = filterDirEntries(zf, ignoredEntries);
+      iterateRaw(zf, new ZipEntryCallback() {
+        public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+          String entryName = zipEntry.getName();
+          if (ignoredEntries.contains(entryName) || dirNames.contains(entryName)) {
             return;
           }
-        }
 
-        if (names.add(entryName)) {
-          ZipEntryUtil.copyEntry(zipEntry, in, out);
-        }
-        else if (log.isDebugEnabled()) {
-          log.debug("Duplicate entry: {}", entryName);
+          if (names.add(entryName)) {
+            ZipEntryUtil.copyEntry(zipEntry, in, out);
+          }
+          else if (log.isDebugEnabled()) {
+            log.debug("Duplicate entry: {}", entryName);
+          }
         }
-      }
-    });
+      });
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      closeQuietly(zf);
+    }
   }
 
   /**
+   * Finds the given names that denote directories of the ZIP file. A name denotes a directory if
+   * it is the name of a directory entry or if there is a directory entry with the same name
+   * followed by a separator. Only the central directory of the ZIP file is used.
    *
-   * @param zip
-   *          zip file to traverse
+   * @param zf
+   *          opened ZIP file
    * @param names
    *          names of entries to filter dirs from
-   * @return Set<String> names of entries that are dirs.
-   *
-   */
-  static Set<String> filterDirEntries(File zip, Collection<String> names) {
-    Set<String> dirs = new HashSet<String>();
-    if (zip == null) {
-      return dirs;
-    }
-    ZipFile zf = null;
-    try {
-      zf = new ZipFile(zip);
-      for(String entryName : names) {
-        ZipEntry entry = zf.getEntry(entryName);
-        if (entry != null) {
-          if (entry.isDirectory()) {
-            dirs.add(entry.getName());
-          }
-          else if (zf.getInputStream(entry) == null) {
-            // no input stream means that this is a dir.
-            dirs.add(entry.getName() + PATH_SEPARATOR);
-          }
+   * @return the directories, with trailing separators.
+   */
+  static ZipPathPrefixes filterDirEntries(ZipRawFile zf, Collection<String> names) {
+    ZipPathPrefixes dirs = new ZipPathPrefixes();
+    for (String entryName : names) {
+      ZipRawEntry entry = zf.getEntry(entryName);
+      if (entry != null) {
+        if (entry.isDirectory()) {
+          dirs.add(entryName);
         }
       }
-
-    }
-    catch (IOException e) {
-      ZipExceptionUtil.rethrow(e);
-    }
-    finally {
-      closeQuietly(zf);
+      else if (!entryName.endsWith(PATH_SEPARATOR) && zf.getEntry(entryName + PATH_SEPARATOR) != null) {
+        dirs.add(entryName + PATH_SEPARATOR);
+      }
     }
     return dirs;
   }
@@ -2068,10 +2759,10 @@ public final class ZipUtil {
     final Map<String, ZipEntrySource> entryByPath = entriesByPath(entries);
     final int entryCount = entryByPath.size();
     try {
-      final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
+      final ZipOutputStream out = new ZipRawCopyOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
       try {
         final Set<String> names = new HashSet<String>();
-        iterate(zip, new ZipEntryCallback() {
+        iterateRaw(zip, new ZipEntryCallback() {
           public void process(InputStream in, ZipEntry zipEntry) throws IOException {
             if (names.add(zipEntry.getName())) {
               ZipEntrySource entry = (ZipEntrySource) entryByPath.remove(zipEntry.getName());
@@ -2087,6 +2778,7 @@ public final class ZipUtil {
             }
           }
         });
+        out.finish();
       }
       finally {
         IOUtils.closeQuietly(out);
@@ -2133,11 +2825,11 @@ public final class ZipUtil {
 
     final Map<String, ZipEntrySource> entryByPath = entriesByPath(entries);
     try {
-      final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
+      final ZipOutputStream out = new ZipRawCopyOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
       try {
         // Copy and replace entries
         final Set<String> names = new HashSet<String>();
-        iterate(zip, new ZipEntryCallback() {
+        iterateRaw(zip, new ZipEntryCallback() {
           public void process(InputStream in, ZipEntry zipEntry) throws IOException {
             if (names.add(zipEntry.getName())) {
               ZipEntrySource entry = (ZipEntrySource) entryByPath.remove(zipEntry.getName());
@@ -2158,6 +2850,7 @@ public final class ZipUtil {
         for (ZipEntrySource zipEntrySource : entryByPath.values()) {
           addEntry(zipEntrySource, out);
         }
+        out.finish();
       }
       finally {
         IOUtils.closeQuietly(out);
@@ -2281,10 +2974,11 @@ public final class ZipUtil {
       log.debug("Copying '" + zip + "' to '" + destZip + "' and transforming entries " + Arrays.asList(entries) + ".");
 
     try {
-      ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
+      ZipOutputStream out = new ZipRawCopyOutputStream(new BufferedOutputStream(new FileOutputStream(destZip)));
       try {
         TransformerZipEntryCallback action = new TransformerZipEntryCallback(Arrays.asList(entries), out);
-        iterate(zip, action);
+        iterateRaw(zip, action);
+        out.finish();
         return action.found();
       }
       finally {
@@ -2482,6 +3176,32 @@ public final class ZipUtil {
    *         during the comparison.
    */
   public static boolean archiveEquals(File f1, File f2) {
+    return archiveEquals(f1, f2, null, false);
+  }
+
+  /**
+   * Compares two ZIP files like {@link #archiveEquals(File, File)}, optionally comparing the
+   * contents of the entries in parallel.
+   * <p>
+   * The meta-data of all the entries (names, types, sizes and CRCs) is compared first, so a
+   * difference found there is reported without reading any contents. Then only the contents of
+   * the files which may still differ are compared, until the first difference.
+   * </p>
+   *
+   * @param f1
+   *          first ZIP file.
+   * @param f2
+   *          second ZIP file.
+   * @param executor
+   *          executor comparing the contents of the entries, <code>null</code> to compare them on the current thread.
+   * @param trustCrc
+   *          <code>true</code> if files with the same size and CRC are considered the same without comparing their contents.
+   * @return <code>true</code> if the two ZIP files contain same entries,
+   *         <code>false</code> if a difference was found or an error occurred
+   *         during the comparison.
+   * @since 1.9
+   */
+  public static boolean archiveEquals(File f1, File f2, ExecutorService executor, boolean trustCrc) {
     try {
       // Check the files byte-by-byte
       if (FileUtils.contentEquals(f1, f2)) {
@@ -2491,7 +3211,7 @@ public final class ZipUtil {
       log.debug("Comparing archives '{}' and '{}'...", f1, f2);
 
       long start = System.currentTimeMillis();
-      boolean result = archiveEqualsInternal(f1, f2);
+      boolean result = executor == null && !trustCrc ? archiveEqualsInternal(f1, f2) : archiveEqualsRaw(f1, f2, executor, trustCrc);
       long time = System.currentTimeMillis() - start;
       if (time > 0) {
         log.debug("Archives compared in " + time + " ms.");
@@ -2505,6 +3225,9 @@ public final class ZipUtil {
   }
 
   private static boolean archiveEqualsInternal(File f1, File f2) throws IOException {
+    if (ZipReaderBackend.isMapped(f1) && ZipReaderBackend.isMapped(f2)) {
+      return archiveEqualsMapped(f1, f2);
+    }
     ZipFile zf1 = null;
     ZipFile zf2 = null;
     try {
@@ -2527,16 +3250,26 @@ public final class ZipUtil {
        * We guarantee that no entry of the second archive is skipped as there
        * are same number of unique entries in both archives.
        */
+      List<ZipEntry[]> files = new ArrayList<ZipEntry[]>();
       Enumeration<? extends ZipEntry> en = zf1.entries();
       while (en.hasMoreElements()) {
         ZipEntry e1 = (ZipEntry) en.nextElement();
         String path = e1.getName();
         ZipEntry e2 = zf2.getEntry(path);
 
-        // Check meta data
+        // Check meta data of all entries before reading any contents
         if (!metaDataEquals(path, e1, e2)) {
           return false;
         }
+        if (!e1.isDirectory()) {
+          files.add(new ZipEntry[] { e1, e2 });
+        }
+      }
+
+      for (ZipEntry[] pair : files) {
+        ZipEntry e1 = pair[0];
+        ZipEntry e2 = pair[1];
+        String path = e1.getName();
 
         // Check the content
         InputStream is1 = null;
@@ -2567,10 +3300,319 @@ public final class ZipUtil {
   }
 
   /**
-   * Compares meta-data of two ZIP entries.
-   * <p>
-   * Two entries are considered the same if
-   * <ol>
+   * Compares two ZIP files using {@link ZipMappedFile} like {@link #archiveEqualsInternal(File, File)}.
+   * The meta-data is read from the mapped central directories and stored entries are compared in place.
+   */
+  private static boolean archiveEqualsMapped(File f1, File f2) throws IOException {
+    ZipMappedFile zf1 = null;
+    ZipMappedFile zf2 = null;
+    try {
+      zf1 = new ZipMappedFile(f1);
+      zf2 = new ZipMappedFile(f2);
+
+      // Check the number of entries
+      if (zf1.size() != zf2.size()) {
+        log.debug("Number of entries changed (" + zf1.size() + " vs " + zf2.size() + ").");
+        return false;
+      }
+
+      // Check meta data of all entries before reading any contents
+      int[] indexes = new int[zf1.size()];
+      for (int i1 = 0; i1 < zf1.size(); i1++) {
+        String path = zf1.getName(i1);
+        int i2 = zf2.indexOf(path);
+        if (!metaDataEquals(path, zf1, i1, zf2, i2)) {
+          return false;
+        }
+        indexes[i1] = i2;
+      }
+
+      for (int i1 = 0; i1 < zf1.size(); i1++) {
+        if (zf1.isDirectory(i1)) {
+          continue;
+        }
+        String path = zf1.getName(i1);
+        int i2 = indexes[i1];
+
+        // Check the content
+        ByteBuffer stored1 = zf1.getStoredData(i1);
+        ByteBuffer stored2 = zf2.getStoredData(i2);
+        if (stored1 != null && stored2 != null) {
+          if (!stored1.equals(stored2)) {
+            log.debug("Entry '{}' content changed.", path);
+            return false;
+          }
+          continue;
+        }
+
+        InputStream is1 = null;
+        InputStream is2 = null;
+        try {
+          is1 = zf1.getInputStream(i1);
+          is2 = zf2.getInputStream(i2);
+
+          if (!IOUtils.contentEquals(is1, is2)) {
+            log.debug("Entry '{}' content changed.", path);
+            return false;
+          }
+        }
+        finally {
+          IOUtils.closeQuietly(is1);
+          IOUtils.closeQuietly(is2);
+        }
+      }
+    }
+    finally {
+      closeQuietly(zf1);
+      closeQuietly(zf2);
+    }
+
+    log.debug("Archives are the same.");
+
+    return true;
+  }
+
+  /**
+   * Compares two ZIP files using {@link ZipRawFile} like {@link #archiveEqualsInternal(File, File)}.
+   * The contents of the entries are compared by the given executor, unless their CRCs are trusted.
+   */
+  private static boolean archiveEqualsRaw(File f1, File f2, ExecutorService executor, boolean trustCrc) throws IOException {
+    ZipRawFile zf1 = null;
+    ZipRawFile zf2 = null;
+    try {
+      zf1 = new ZipRawFile(f1);
+      zf2 = new ZipRawFile(f2);
+
+      // Check the number of entries
+      if (zf1.size() != zf2.size()) {
+        log.debug("Number of entries changed (" + zf1.size() + " vs " + zf2.size() + ").");
+        return false;
+      }
+
+      // Check meta data of all entries, collecting the files whose contents must be compared
+      List<ZipRawEntry[]> suspects = new ArrayList<ZipRawEntry[]>();
+      for (ZipRawEntry e1 : zf1.getEntries()) {
+        String path = e1.getName();
+        ZipRawEntry e2 = zf2.getEntry(path);
+        if (!metaDataEquals(path, e1, e2)) {
+          return false;
+        }
+        if (e1.isDirectory() || trustCrc && hasSizeAndCrc(e1) && hasSizeAndCrc(e2)) {
+          continue;
+        }
+        suspects.add(new ZipRawEntry[] { e1, e2 });
+      }
+
+      // Check the content
+      boolean result = executor == null ? contentEquals(zf1, zf2, suspects) : contentEquals(zf1, zf2, suspects, executor);
+      if (result) {
+        log.debug("Archives are the same.");
+      }
+      return result;
+    }
+    finally {
+      closeQuietly(zf1);
+      closeQuietly(zf2);
+    }
+  }
+
+  private static boolean hasSizeAndCrc(ZipEntry e) {
+    return e.getSize() != -1 && e.getCrc() != -1;
+  }
+
+  /**
+   * Compares the contents of the given pairs of entries on the current thread.
+   */
+  private static boolean contentEquals(ZipRawFile zf1, ZipRawFile zf2, List<ZipRawEntry[]> pairs) throws IOException {
+    for (ZipRawEntry[] pair : pairs) {
+      checkInterrupted();
+      if (!new EntryComparison(pair[0].getName(), zf1.getInputStream(pair[0]), zf2.getInputStream(pair[1]), null).call()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares the contents of the given pairs of entries with the executor, stopping at the first difference.
+   */
+  private static boolean contentEquals(ZipRawFile zf1, ZipRawFile zf2, List<ZipRawEntry[]> pairs, ExecutorService executor) throws IOException {
+    CompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(executor);
+    List<EntryComparison> comparisons = new ArrayList<EntryComparison>(pairs.size());
+    AtomicBoolean stop = new AtomicBoolean();
+    try {
+      for (ZipRawEntry[] pair : pairs) {
+        // the streams keep the files open until they are closed by the comparison
+        EntryComparison comparison = new EntryComparison(pair[0].getName(),
+            zf1.getRetainedInputStream(pair[0]), zf2.getRetainedInputStream(pair[1]), stop);
+        comparisons.add(comparison);
+        completion.submit(comparison);
+      }
+      for (int i = 0; i < comparisons.size(); i++) {
+        Future<Boolean> future = completion.take();
+        if (!future.get()) {
+          return false;
+        }
+      }
+      return true;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ZipException("Interrupted", new InterruptedIOException());
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new ZipException("Failed to compare entries", e.getCause());
+    }
+    finally {
+      // running comparisons stop at their next read, those not started yet are skipped
+      stop.set(true);
+      for (EntryComparison comparison : comparisons) {
+        comparison.cancel();
+      }
+    }
+  }
+
+  /**
+   * Compares the contents of two entries and closes their streams, unless it's cancelled before.
+   * A comparison which is running when its stop flag is set gives up at its next read.
+   */
+  private static class EntryComparison implements Callable<Boolean> {
+
+    /**
+     * Number of bytes compared between checks of the stop flag.
+     */
+    private static final int COMPARE_BUFFER_SIZE = 8 * 1024;
+
+    private final String path;
+
+    private final InputStream is1;
+
+    private final InputStream is2;
+
+    /**
+     * Set by the first of {@link #call()} and {@link #cancel()}, which then closes the streams.
+     */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    /**
+     * Shared by all comparisons of the same archives, <code>null</code> if they are never stopped.
+     */
+    private final AtomicBoolean stop;
+
+    EntryComparison(String path, InputStream is1, InputStream is2, AtomicBoolean stop) {
+      this.path = path;
+      this.is1 = is1;
+      this.is2 = is2;
+      this.stop = stop;
+    }
+
+    public Boolean call() throws IOException {
+      if (!claimed.compareAndSet(false, true)) {
+        return Boolean.FALSE;
+      }
+      try {
+        byte[] buffer1 = new byte[COMPARE_BUFFER_SIZE];
+        byte[] buffer2 = new byte[COMPARE_BUFFER_SIZE];
+        while (true) {
+          if (stop != null && stop.get()) {
+            return Boolean.FALSE;
+          }
+          int n1 = readFully(is1, buffer1);
+          int n2 = readFully(is2, buffer2);
+          if (n1 != n2 || !rangeEquals(buffer1, buffer2, n1)) {
+            log.debug("Entry '{}' content changed.", path);
+            return Boolean.FALSE;
+          }
+          if (n1 < buffer1.length) {
+            return Boolean.TRUE;
+          }
+        }
+      }
+      finally {
+        IOUtils.closeQuietly(is1);
+        IOUtils.closeQuietly(is2);
+      }
+    }
+
+    /**
+     * @return number of bytes read, less than the buffer length only at the end of the stream.
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+      int count = 0;
+      while (count < buffer.length) {
+        int n = in.read(buffer, count, buffer.length - count);
+        if (n == -1) {
+          break;
+        }
+        count += n;
+      }
+      return count;
+    }
+
+    private static boolean rangeEquals(byte[] b1, byte[] b2, int length) {
+      for (int i = 0; i < length; i++) {
+        if (b1[i] != b2[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void cancel() {
+      if (claimed.compareAndSet(false, true)) {
+        IOUtils.closeQuietly(is1);
+        IOUtils.closeQuietly(is2);
+      }
+    }
+
+  }
+
+  /**
+   * Compares meta-data of two entries of mapped ZIP files like
+   * {@link #metaDataEquals(String, ZipEntry, ZipEntry)} without creating the entries.
+   *
+   * @param i2
+   *          index of the second entry, -1 if it's missing.
+   */
+  private static boolean metaDataEquals(String path, ZipMappedFile zf1, int i1, ZipMappedFile zf2, int i2) {
+    if (i2 < 0) {
+      log.debug("Entry '{}' removed.", path);
+      return false;
+    }
+
+    if (zf1.isDirectory(i1) != zf2.isDirectory(i2)) {
+      log.debug(zf1.isDirectory(i1) ? "Entry '{}' not a directory any more." : "Entry '{}' now a directory.", path);
+      return false;
+    }
+    if (zf1.isDirectory(i1)) {
+      return true;
+    }
+
+    long size1 = zf1.getSize(i1);
+    long size2 = zf2.getSize(i2);
+    if (size1 != size2) {
+      log.debug("Entry '" + path + "' size changed (" + size1 + " vs " + size2 + ").");
+      return false;
+    }
+
+    long crc1 = zf1.getCrc(i1);
+    long crc2 = zf2.getCrc(i2);
+    if (crc1 != crc2) {
+      log.debug("Entry '" + path + "' CRC changed (" + crc1 + " vs " + crc2 + ").");
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Compares meta-data of two ZIP entries.
+   * <p>
+   * Two entries are considered the same if
+   * <ol>
    * <li>both entries exist,</li>
    * <li>both entries are either directories or files,</li>
    * <li>both entries have the same size,</li>
@@ -2635,6 +3677,100 @@ public final class ZipUtil {
     return true;
   }
 
+  /**
+   * Finds all the differences between the entries of two ZIP files, see {@link ZipDiff}.
+   * <p>
+   * Both central directories are read once. The contents of an entry are compared only if its
+   * size and CRC are the same in both archives, one entry at a time.
+   * </p>
+   *
+   * @param f1
+   *          first (old) ZIP file.
+   * @param f2
+   *          second (new) ZIP file.
+   * @return differences found.
+   * @since 1.9
+   */
+  public static ZipDiff diff(File f1, File f2) {
+    return diff(f1, f2, false);
+  }
+
+  /**
+   * Finds all the differences between the entries of two ZIP files like {@link #diff(File, File)}.
+   *
+   * @param f1
+   *          first (old) ZIP file.
+   * @param f2
+   *          second (new) ZIP file.
+   * @param trustCrc
+   *          <code>true</code> if files with the same size and CRC are considered to have the same contents without comparing them.
+   * @return differences found.
+   * @since 1.9
+   */
+  public static ZipDiff diff(File f1, File f2, boolean trustCrc) {
+    ZipRawFile zf1 = null;
+    ZipRawFile zf2 = null;
+    try {
+      zf1 = new ZipRawFile(f1);
+      zf2 = new ZipRawFile(f2);
+
+      ZipDiff result = new ZipDiff();
+      for (ZipRawEntry e1 : zf1.getEntries()) {
+        checkInterrupted();
+        String path = e1.getName();
+        ZipRawEntry e2 = zf2.getEntry(path);
+        if (e2 == null) {
+          result.removed(path);
+        }
+        else if (!contentEquals(zf1, e1, zf2, e2, trustCrc)) {
+          result.contentModified(path);
+        }
+        else if (!rawMetaDataEquals(e1, e2)) {
+          result.metadataModified(path);
+        }
+      }
+      for (ZipRawEntry e2 : zf2.getEntries()) {
+        if (zf1.getEntry(e2.getName()) == null) {
+          result.added(e2.getName());
+        }
+      }
+      return result;
+    }
+    catch (IOException e) {
+      throw ZipExceptionUtil.rethrow(e);
+    }
+    finally {
+      closeQuietly(zf1);
+      closeQuietly(zf2);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if both entries are directories or files with the same contents.
+   */
+  private static boolean contentEquals(ZipRawFile zf1, ZipRawEntry e1, ZipRawFile zf2, ZipRawEntry e2, boolean trustCrc) throws IOException {
+    if (e1.isDirectory() || e2.isDirectory()) {
+      return e1.isDirectory() == e2.isDirectory();
+    }
+    if (e1.getRawSize() != e2.getRawSize() || e1.getRawCrc() != e2.getRawCrc()) {
+      return false;
+    }
+    if (trustCrc) {
+      return true;
+    }
+    return new EntryComparison(e1.getName(), zf1.getInputStream(e1), zf2.getInputStream(e2), null).call();
+  }
+
+  /**
+   * @return <code>true</code> if both entries have the same modification time, extra data, attributes and comment.
+   */
+  private static boolean rawMetaDataEquals(ZipRawEntry e1, ZipRawEntry e2) {
+    return e1.getDosTime() == e2.getDosTime()
+        && Arrays.equals(e1.getCentralExtra(), e2.getCentralExtra())
+        && e1.getExternalAttributes() == e2.getExternalAttributes()
+        && Arrays.equals(e1.getRawComment(), e2.getRawComment());
+  }
+
   /**
    * Compares same entry in two ZIP files (byte-by-byte).
    *
@@ -2766,6 +3902,77 @@ public final class ZipUtil {
     }
   }
 
+  /**
+   * Closes the mapped ZIP file while ignoring any errors.
+   *
+   * @param zf
+   *          ZIP file to be closed.
+   */
+  static void closeQuietly(ZipMappedFile zf) {
+    if (zf != null) {
+      zf.close();
+    }
+  }
+
+  /**
+   * Closes the ZIP index while ignoring any errors.
+   *
+   * @param index
+   *          ZIP index to be closed.
+   */
+  static void closeQuietly(ZipIndex index) {
+    try {
+      if (index != null) {
+        index.close();
+      }
+    }
+    catch (IOException e) {
+    }
+  }
+
+  /**
+   * Closes the ZIP file while ignoring any errors.
+   *
+   * @param zf
+   *          ZIP file to be closed.
+   */
+  static void closeQuietly(ZipRawFile zf) {
+    try {
+      if (zf != null) {
+        zf.close();
+      }
+    }
+    catch (IOException e) {
+    }
+  }
+
+  /**
+   * Closes the file while ignoring any errors.
+   *
+   * @param raf
+   *          file to be closed.
+   */
+  private static void closeQuietly(RandomAccessFile raf) {
+    try {
+      if (raf != null) {
+        raf.close();
+      }
+    }
+    catch (IOException e) {
+    }
+  }
+
+  /**
+   * Stops a long running operation of {@link ZipUtilAsync} between two entries if its thread has been
+   * interrupted, i.e. its {@link java.util.concurrent.Future} was cancelled. Operations called directly
+   * ignore the interrupt flag, as they always did.
+   */
+  static void checkInterrupted() {
+    if (ZipUtilAsync.isCancellable() && Thread.currentThread().isInterrupted()) {
+      throw new ZipException("Interrupted", new InterruptedIOException());
+    }
+  }
+
   /**
    * Simple helper to make inplace operation easier
    *
@@ -2782,8 +3989,8 @@ public final class ZipUtil {
   /**
    *
    * This method provides a general infrastructure for in-place operations.
-   * It creates temp file as a destination, then invokes the action on source and destination.
-   * Then it copies the result back into src file.
+   * It creates temp file next to the source as a destination, then invokes the action on source and destination.
+   * Then it renames the result over the src file.
    *
    * @param src - source zip file we want to modify
    * @param action - action which actually modifies the archives
@@ -2793,11 +4000,10 @@ public final class ZipUtil {
   private static boolean operateInPlace(File src, InPlaceAction action) {
     File tmp = null;
     try {
-      tmp = File.createTempFile("zt-zip-tmp", ".zip");
+      tmp = createInPlaceTempFile(src, "zt-zip-tmp", ".zip");
       boolean result = action.act(tmp);
       if (result) { // else nothing changes
-        FileUtils.forceDelete(src);
-        FileUtils.moveFile(tmp, src);
+        replaceInPlace(tmp, src);
       }
       return result;
     }
@@ -2809,4 +4015,61 @@ public final class ZipUtil {
     }
   }
 
+  /**
+   * Creates a temporary file for the new contents of a file that is changed in place. The file is
+   * created in the same directory, so it can be renamed over the original one. If that directory is
+   * not writable, the default temporary directory is used instead.
+   *
+   * @param src
+   *          file that is changed in place.
+   * @return new empty file.
+   */
+  static File createInPlaceTempFile(File src, String prefix, String suffix) throws IOException {
+    File dir = src.getAbsoluteFile().getParentFile();
+    if (dir != null) {
+      try {
+        return File.createTempFile(prefix, suffix, dir);
+      }
+      catch (IOException e) {
+        log.debug("Could not create a temporary file in '{}', using the default temporary directory", dir);
+      }
+    }
+    return File.createTempFile(prefix, suffix);
+  }
+
+  /**
+   * Replaces a file that is changed in place with its new contents. The new file is renamed over
+   * the original one, which is atomic on POSIX file systems if both are in the same directory.
+   * If the rename fails (e.g. the files are on different file systems or the platform does not
+   * replace existing files), the original file is deleted and the new one is moved in its place.
+   *
+   * @param tmp
+   *          file with the new contents, e.g. created by {@link #createInPlaceTempFile(File, String, String)}.
+   * @param src
+   *          file that is changed in place.
+   */
+  static void replaceInPlace(File tmp, File src) throws IOException {
+    if (syncInPlaceUpdates) {
+      sync(tmp);
+    }
+    ZipFileCache.invalidate(src);
+    if (!tmp.renameTo(src)) {
+      FileUtils.forceDelete(src);
+      FileUtils.moveFile(tmp, src);
+    }
+  }
+
+  /**
+   * Flushes the contents of the given file to the disk.
+   */
+  private static void sync(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.getFD().sync();
+    }
+    finally {
+      raf.close();
+    }
+  }
+
 }
@@ -0,0 +1,224 @@
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.zip;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
+
+/**
+ * Runs the operations of {@link ZipUtil} and {@link Zips} with a given executor, so the calling
+ * thread does not wait for them.
+ * <p>
+ * Each method submits the corresponding operation of {@link ZipUtil} and returns its
+ * {@link Future}. The failures of the operation are thrown by {@link Future#get()} wrapped in an
+ * {@link java.util.concurrent.ExecutionException}.
+ * <p>
+ * An operation whose future is cancelled with <code>mayInterruptIfRunning</code> stops before the
+ * next entry (or fails right away while reading from a file channel). The same operations called
+ * directly on {@link ZipUtil} are not stopped by interrupts. The temporary file of an
+ * in-place operation is then deleted and the original ZIP file is left unchanged. A new file
+ * created by e.g. {@link #pack(File, File)} may be left incomplete.
+ *
+ * @since 1.9
+ */
+public class ZipUtilAsync {
+
+  /**
+   * Set while an operation submitted by this class is running on the current thread.
+   */
+  private static final ThreadLocal<Boolean> running = new ThreadLocal<Boolean>();
+
+  private final ExecutorService executor;
+
+  /**
+   * @param executor
+   *          executor running the operations, it is not shut down by this class.
+   */
+  public ZipUtilAsync(ExecutorService executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor must be given");
+    }
+    this.executor = executor;
+  }
+
+  /**
+   * @see ZipUtil#pack(File, File)
+   */
+  public Future<Void> pack(final File rootDir, final File zip) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.pack(rootDir, zip);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#pack(File, File, NameMapper, int)
+   */
+  public Future<Void> pack(final File sourceDir, final File targetZip, final NameMapper mapper, final int compressionLevel) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.pack(sourceDir, targetZip, mapper, compressionLevel);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#unpack(File, File)
+   */
+  public Future<Void> unpack(final File zip, final File outputDir) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.unpack(zip, outputDir);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#unpack(File, File, NameMapper)
+   */
+  public Future<Void> unpack(final File zip, final File outputDir, final NameMapper mapper) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.unpack(zip, outputDir, mapper);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#repack(File, File, int)
+   */
+  public Future<Void> repack(final File srcZip, final File dstZip, final int compressionLevel) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.repack(srcZip, dstZip, compressionLevel);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#repack(File, int)
+   */
+  public Future<Void> repack(final File zip, final int compressionLevel) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.repack(zip, compressionLevel);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#addEntries(File, ZipEntrySource[])
+   */
+  public Future<Void> addEntries(final File zip, final ZipEntrySource[] entries) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.addEntries(zip, entries);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#replaceEntries(File, ZipEntrySource[])
+   */
+  public Future<Boolean> replaceEntries(final File zip, final ZipEntrySource[] entries) {
+    return submit(new Callable<Boolean>() {
+      public Boolean call() {
+        return ZipUtil.replaceEntries(zip, entries);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#addOrReplaceEntries(File, ZipEntrySource[])
+   */
+  public Future<Void> addOrReplaceEntries(final File zip, final ZipEntrySource[] entries) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.addOrReplaceEntries(zip, entries);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#removeEntries(File, String[])
+   */
+  public Future<Void> removeEntries(final File zip, final String[] paths) {
+    return submit(new Runnable() {
+      public void run() {
+        ZipUtil.removeEntries(zip, paths);
+      }
+    });
+  }
+
+  /**
+   * @see ZipUtil#transformEntries(File, ZipEntryTransformerEntry[])
+   */
+  public Future<Boolean> transformEntries(final File zip, final ZipEntryTransformerEntry[] entries) {
+    return submit(new Callable<Boolean>() {
+      public Boolean call() {
+        return ZipUtil.transformEntries(zip, entries);
+      }
+    });
+  }
+
+  /**
+   * @see Zips#process()
+   */
+  public Future<Void> process(final Zips zips) {
+    return submit(new Runnable() {
+      public void run() {
+        zips.process();
+      }
+    });
+  }
+
+  private Future<Void> submit(final Runnable operation) {
+    return submit(new Callable<Void>() {
+      public Void call() {
+        operation.run();
+        return null;
+      }
+    });
+  }
+
+  private <T> Future<T> submit(final Callable<T> operation) {
+    return executor.submit(new Callable<T>() {
+      public T call() throws Exception {
+        running.set(Boolean.TRUE);
+        try {
+          return operation.call();
+        }
+        finally {
+          running.remove();
+        }
+      }
+    });
+  }
+
+  /**
+   * @return <code>true</code> if the current thread runs an operation submitted by this class, which
+   *         stops once the thread is interrupted.
+   */
+  static boolean isCancellable() {
+    return running.get() != null;
+  }
+
+}
@@ -21,22 +21,16 @@ import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.zeroturnaround.zip.commons.FileUtils;
@@ -99,6 +93,11 @@ public class Zips {
    */
   private boolean unpackedResult;
 
+  /**
+   * Optional executor for compressing the added entries concurrently.
+   */
+  private ExecutorService executor;
+
   private Zips(File src) {
     this.src = src;
   }
@@ -199,8 +198,9 @@ public class Zips {
       return this;
     }
     
-    Collection<File> files = ZTFileUtil.listFiles(file);
-    for (File entryFile : files) {
+    Map<File, ZTFileAttributes> files = ZTFileUtil.listFilesWithAttributes(file);
+    for (Map.Entry<File, ZTFileAttributes> it : files.entrySet()) {
+      File entryFile = it.getKey();
       if (filter != null && !filter.accept(entryFile)) {
         continue;
       }
@@ -215,7 +215,7 @@ public class Zips {
       if (entryPath.startsWith("/")) {
         entryPath = entryPath.substring(1);
       }
-      this.changedEntries.add(new FileSource(entryPath, entryFile));
+      this.changedEntries.add(new FileSource(entryPath, entryFile, it.getValue()));
     }
     return this;
   }
@@ -307,6 +307,20 @@ public class Zips {
     return this;
   }
 
+  /**
+   * Specifies an executor for compressing the added entries concurrently
+   * or writing the files concurrently if the result is unpacked.
+   * The result is the same as without an executor.
+   * The executor is not shut down by this Zips.
+   *
+   * @param executor executor to use, <code>null</code> means all the work is done in the current thread
+   * @return this Zips for fluent api
+   */
+  public Zips executor(ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
   public Zips unpack() {
     this.unpackedResult = true;
     return this;
@@ -351,20 +365,33 @@ public class Zips {
     try {
       destinationFile = getDestinationFile();
       ZipOutputStream out = null;
+      UnpackingCallback unpackingCallback = null;
       ZipEntryOrInfoAdapter zipEntryAdapter = null;
 
       if (destinationFile.isFile()) {
-        out = ZipFileUtil.createZipOutputStream(new BufferedOutputStream(new FileOutputStream(destinationFile)), charset);
+        // unchanged entries are copied without recompressing them
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(destinationFile));
+        out = executor == null ? new ZipRawCopyOutputStream(os, charset) : new ParallelZipOutputStream(os, charset, executor);
         zipEntryAdapter = new ZipEntryOrInfoAdapter(new CopyingCallback(transformers, out, preserveTimestamps), null);
       }
       else { // directory
-        zipEntryAdapter = new ZipEntryOrInfoAdapter(new UnpackingCallback(transformers, destinationFile), null);
+        unpackingCallback = new UnpackingCallback(transformers, destinationFile, executor);
+        zipEntryAdapter = new ZipEntryOrInfoAdapter(unpackingCallback, null);
       }
       try {
         processAllEntries(zipEntryAdapter);
+        if (out != null) {
+          out.finish();
+        }
+        if (unpackingCallback != null) {
+          unpackingCallback.finish();
+        }
       }
       finally {
         IOUtils.closeQuietly(out);
+        if (unpackingCallback != null) {
+          unpackingCallback.cancel();
+        }
       }
         handleInPlaceActions(destinationFile);
     }
@@ -387,7 +414,7 @@ public class Zips {
   private File getDestinationFile() throws IOException {
     if(isUnpack()) {
       if(isInPlace()) {
-        File tempFile = File.createTempFile("zips", null);
+        File tempFile = ZipUtil.createInPlaceTempFile(src, "zips", null);
         FileUtils.deleteQuietly(tempFile);
         tempFile.mkdirs(); // temp dir created
         return tempFile;
@@ -406,7 +433,7 @@ public class Zips {
     else {
       // we need a file
       if(isInPlace()) { // no destination specified, temp file
-        return File.createTempFile("zips", ".zip");
+        return ZipUtil.createInPlaceTempFile(src, "zips", ".zip");
       }
       else {
         if(dest.isDirectory()) {
@@ -497,18 +524,18 @@ public class Zips {
       // if we don't have source specified, then we have nothing to iterate.
       return;
     }
-    final Set<String> removedDirs = ZipUtil.filterDirEntries(src, removedEntries);
-
-    ZipFile zf = null;
+    ZipRawFile zf = null;
     try {
-      zf = getZipFile();
+      zf = new ZipRawFile(src, charset);
+      // removed directories are found from the same central directory as the copied entries
+      ZipPathPrefixes removedDirs = ZipUtil.filterDirEntries(zf, removedEntries);
 
       // manage existing entries
-      Enumeration<? extends ZipEntry> en = zf.entries();
-      while (en.hasMoreElements()) {
-        ZipEntry entry = en.nextElement();
+      for (ZipRawEntry rawEntry : zf.getEntries()) {
+        ZipUtil.checkInterrupted();
+        ZipEntry entry = rawEntry;
         String entryName = entry.getName();
-        if (removedEntries.contains(entryName) || isEntryInDir(removedDirs, entryName)) {
+        if (removedEntries.contains(entryName) || removedDirs.contains(entryName)) {
           // removed entries are
           continue;
         }
@@ -524,7 +551,7 @@ public class Zips {
           }
         }
 
-        InputStream is = zf.getInputStream(entry);
+        InputStream is = zf.getInputStream(rawEntry);
         try {
           zipEntryCallback.process(is, entry);
         }
@@ -583,46 +610,18 @@ public class Zips {
   private void handleInPlaceActions(File result) throws IOException {
     if (isInPlace()) {
       // we operate in-place
-      FileUtils.forceDelete(src);
       if (result.isFile()) {
-        FileUtils.moveFile(result, src);
+        ZipUtil.replaceInPlace(result, src);
       }
       else {
+        // a directory can't replace the file atomically
+        ZipFileCache.invalidate(src);
+        FileUtils.forceDelete(src);
         FileUtils.moveDirectory(result, src);
       }
     }
   }
 
-  /**
-   * Checks if entry given by name resides inside of one of the dirs.
-   *
-   * @param dirNames dirs
-   * @param entryName entryPath
-   */
-  private boolean isEntryInDir(Set<String> dirNames, String entryName) {
-    // this should be done with a trie, put dirNames in a trie and check if entryName leads to
-    // some node or not.
-    for(String dirName : dirNames) {
-      if (entryName.startsWith(dirName)) {
-        return true;
-      }
-    }
-    return false;
-  }
-
-  /**
-   * Creates a ZipFile from src and charset of this object. If a constructor with charset is
-   * not available, throws an exception.
-   *
-   * @return ZipFile
-   * @throws IOException if ZipFile cannot be constructed
-   * @throws IllegalArgumentException if accessing constructor ZipFile(File, Charset)
-   *
-   */
-  private ZipFile getZipFile() throws IOException {
-    return ZipFileUtil.getZipFile(src, charset);
-  }
-
   private static class CopyingCallback implements ZipEntryCallback {
 
     private final Map<String, ZipEntryTransformer> entryByPath;
@@ -660,11 +659,28 @@ public class Zips {
     private final Map<String, ZipEntryTransformer> entryByPath;
     private final Set<String> visitedNames;
     private final File destination;
+    private final ParallelFileWriter writer;
 
-    private UnpackingCallback(List<ZipEntryTransformerEntry> entries, File destination) {
+    private UnpackingCallback(List<ZipEntryTransformerEntry> entries, File destination, ExecutorService executor) {
       this.destination = destination;
       this.entryByPath = ZipUtil.transformersByPath(entries);
       visitedNames = new HashSet<String>();
+      writer = executor == null ? null : new ParallelFileWriter(executor);
+    }
+
+    /**
+     * Waits until all the files are written.
+     */
+    private void finish() throws IOException {
+      if (writer != null) {
+        writer.await();
+      }
+    }
+
+    private void cancel() {
+      if (writer != null) {
+        writer.cancel();
+      }
     }
 
     public void process(InputStream in, ZipEntry zipEntry) throws IOException {
@@ -686,7 +702,16 @@ public class Zips {
       }
 
       ZipEntryTransformer transformer = (ZipEntryTransformer) entryByPath.remove(entryName);
-      if (transformer == null) { // no transformer
+      if (transformer == null && writer != null) {
+        // the stream of an existing entry is closed after this call, so open a new one
+        InputStream source = in;
+        if (zipEntry instanceof ZipRawEntry) {
+          ZipRawEntry rawEntry = (ZipRawEntry) zipEntry;
+          source = rawEntry.getZipFile().getRetainedInputStream(rawEntry);
+        }
+        writer.write(source, file, null);
+      }
+      else if (transformer == null) { // no transformer
         FileUtils.copy(in, file);
       }
       else { // still transform entry
@@ -694,44 +719,16 @@ public class Zips {
       }
     }
 
-    private void transformIntoFile(final ZipEntryTransformer transformer, final InputStream entryIn, final ZipEntry zipEntry, final File destination) throws IOException {
-      final PipedInputStream pipedIn = new PipedInputStream();
-      final PipedOutputStream pipedOut = new PipedOutputStream(pipedIn);
-
-      final ZipOutputStream zipOut = new ZipOutputStream(pipedOut);
-      final ZipInputStream zipIn = new ZipInputStream(pipedIn);
-
-      ExecutorService newFixedThreadPool = Executors.newFixedThreadPool(1);
-
+    private void transformIntoFile(ZipEntryTransformer transformer, InputStream entryIn, ZipEntry zipEntry, File destination) throws IOException {
+      // the transformer writes the entry straight into the file on the current thread
+      ZipOutputStream fileOut = new EntryFileOutputStream(new BufferedOutputStream(new FileOutputStream(destination)));
       try {
-        newFixedThreadPool.execute(new Runnable() {
-          public void run() {
-            try {
-              transformer.transform(entryIn, zipEntry, zipOut);
-            }
-            catch (IOException e) {
-              ZipExceptionUtil.rethrow(e);
-            }
-          }
-        });
-        zipIn.getNextEntry();
-        FileUtils.copy(zipIn, destination);
+        transformer.transform(entryIn, zipEntry, fileOut);
+        fileOut.close();
       }
       finally {
-        try {
-          zipIn.closeEntry();
-        }
-        catch (IOException e) {
-          // closing quietly
-        }
-
-        newFixedThreadPool.shutdown();
-        IOUtils.closeQuietly(pipedIn);
-        IOUtils.closeQuietly(zipIn);
-        IOUtils.closeQuietly(pipedOut);
-        IOUtils.closeQuietly(zipOut);
+        IOUtils.closeQuietly(fileOut);
       }
-
     }
   }
 }
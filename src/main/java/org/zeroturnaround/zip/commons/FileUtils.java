@@ -17,7 +17,6 @@
 
 package org.zeroturnaround.zip.commons;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
@@ -108,7 +107,7 @@ public class FileUtils {
   public static void copy(File file, OutputStream out) throws IOException {
     FileInputStream in = new FileInputStream(file);
     try {
-      IOUtils.copy(new BufferedInputStream(in), out);
+      IOUtils.copy(in, out);
     }
     finally {
       IOUtils.closeQuietly(in);
@@ -126,6 +125,8 @@ public class FileUtils {
    * @throws java.io.IOException if file is not found or copying fails
    */
   public static void copy(InputStream in, File file) throws IOException {
+    // streams such as ZipInputStream return small chunks even to a large buffer,
+    // larger ones are written through the buffer directly
     OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
     try {
       IOUtils.copy(in, out);
@@ -48,7 +48,8 @@ import java.io.Writer;
  * when moving from development to production.
  * <p>
  * All the methods in this class that read a stream are buffered internally. This means that there is no cause to use a <code>BufferedInputStream</code> or
- * <code>BufferedReader</code>. The default buffer size of 4K has been shown to be efficient in tests.
+ * <code>BufferedReader</code>. Byte streams are copied using a per-thread buffer of {@link #getCopyBufferSize()} bytes
+ * (see {@link #acquireCopyBuffer()}), the default buffer size of 4K is used for characters.
  * <p>
  * Wherever possible, the methods in this class do <em>not</em> flush or close the stream. This is to avoid making non-portable assumptions about the streams' origin and further
  * use. Thus the caller is still responsible for closing streams after use.
@@ -107,6 +108,18 @@ public class IOUtils {
    */
   private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
 
+  /**
+   * The default size of the buffers used for copying bytes.
+   */
+  public static final int DEFAULT_COPY_BUFFER_SIZE = 1024 * 64;
+
+  private static volatile int copyBufferSize = DEFAULT_COPY_BUFFER_SIZE;
+
+  /**
+   * Idle copy buffer of each thread, <code>null</code> while the buffer is in use.
+   */
+  private static final ThreadLocal<byte[]> copyBuffers = new ThreadLocal<byte[]>();
+
   /**
    * Instances should NOT be constructed in standard programming.
    */
@@ -114,6 +127,53 @@ public class IOUtils {
     super();
   }
 
+  /**
+   * Sets the size of the buffers used for copying bytes. Buffers of the previous size are
+   * dropped once they are released.
+   *
+   * @param size the buffer size in bytes
+   */
+  public static void setCopyBufferSize(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive: " + size);
+    }
+    copyBufferSize = size;
+  }
+
+  /**
+   * @return the size of the buffers used for copying bytes
+   */
+  public static int getCopyBufferSize() {
+    return copyBufferSize;
+  }
+
+  /**
+   * Returns a buffer for copying bytes, reusing the one of the current thread if it's not in use.
+   * The buffer should be given back with {@link #releaseCopyBuffer(byte[])} once it's not used
+   * any more, nested copies then get a buffer of their own.
+   *
+   * @return a buffer of {@link #getCopyBufferSize()} bytes
+   */
+  public static byte[] acquireCopyBuffer() {
+    byte[] buffer = copyBuffers.get();
+    if (buffer != null && buffer.length == copyBufferSize) {
+      copyBuffers.set(null);
+      return buffer;
+    }
+    return new byte[copyBufferSize];
+  }
+
+  /**
+   * Gives back a buffer returned by {@link #acquireCopyBuffer()} to be reused by the current thread.
+   *
+   * @param buffer the buffer that is not used any more, may be null
+   */
+  public static void releaseCopyBuffer(byte[] buffer) {
+    if (buffer != null && buffer.length == copyBufferSize) {
+      copyBuffers.set(buffer);
+    }
+  }
+
   /**
    * Unconditionally close an <code>InputStream</code>.
    * <p>
@@ -229,14 +289,19 @@ public class IOUtils {
    */
   public static long copyLarge(InputStream input, OutputStream output)
       throws IOException {
-    byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-    long count = 0;
-    int n = 0;
-    while (-1 != (n = input.read(buffer))) {
-      output.write(buffer, 0, n);
-      count += n;
+    byte[] buffer = acquireCopyBuffer();
+    try {
+      long count = 0;
+      int n = 0;
+      while (-1 != (n = input.read(buffer))) {
+        output.write(buffer, 0, n);
+        count += n;
+      }
+      return count;
+    }
+    finally {
+      releaseCopyBuffer(buffer);
     }
-    return count;
   }
 
   /**
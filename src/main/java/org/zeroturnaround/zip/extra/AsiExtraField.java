@@ -111,8 +111,24 @@ public class AsiExtraField implements ZipExtraField, Cloneable {
    */
   final int DEFAULT_FILE_PERM = 0644;
 
-  private static final ZipShort HEADER_ID = new ZipShort(0x756E);
+  /**
+   * The Header-ID value.
+   * 
+   * @since 1.9
+   */
+  public static final int HEADER_ID_VALUE = 0x756E;
+
+  private static final ZipShort HEADER_ID = new ZipShort(HEADER_ID_VALUE);
   private static final int WORD = 4;
+
+  /**
+   * Instances used by {@link #parseMode(byte[], int, int)} to verify checksums.
+   */
+  private static final ThreadLocal<CRC32> CRCS = new ThreadLocal<CRC32>() {
+    protected CRC32 initialValue() {
+      return new CRC32();
+    }
+  };
   /**
    * Standard Unix stat(2) file mode.
    * 
@@ -400,6 +416,36 @@ public class AsiExtraField implements ZipExtraField, Cloneable {
     setMode(newMode);
   }
 
+  /**
+   * Read the file mode from the local file data of this extra field, without creating any objects.
+   * 
+   * @param data an array of bytes
+   * @param offset the start offset
+   * @param length the number of bytes in the array from offset
+   * @return the file mode as stored, including the file type
+   * @throws ZipException on error
+   * @since 1.9
+   */
+  public static int parseMode(byte[] data, int offset, int length) throws ZipException {
+    // CheckStyle:MagicNumber OFF
+    if (length < WORD + 10) {
+      throw new ZipException("bad ASi extra field length " + length);
+    }
+    long givenChecksum = ZipLong.getValue(data, offset);
+    CRC32 crc = CRCS.get();
+    crc.reset();
+    crc.update(data, offset + WORD, length - WORD);
+    long realChecksum = crc.getValue();
+    if (givenChecksum != realChecksum) {
+      throw new ZipException("bad CRC checksum "
+          + Long.toHexString(givenChecksum)
+          + " instead of "
+          + Long.toHexString(realChecksum));
+    }
+    return ZipShort.getValue(data, offset + WORD);
+    // CheckStyle:MagicNumber ON
+  }
+
   /**
    * Get the file mode for given permissions with the correct file type.
    * 
@@ -37,16 +37,33 @@ public class ExtraFieldUtils {
 
   private static final int WORD = 4;
 
+  /**
+   * Creates instances of a {@link ZipExtraField} implementation without reflection.
+   * 
+   * @since 1.9
+   */
+  public interface ExtraFieldFactory {
+
+    /**
+     * @return a new instance of the extra field
+     */
+    ZipExtraField create();
+  }
+
   /**
    * Static registry of known extra fields.
    * 
    * @since 1.1
    */
-  private static final Map<ZipShort, Class<?>> implementations;
+  private static final Map<ZipShort, ExtraFieldFactory> implementations;
 
   static {
-    implementations = new ConcurrentHashMap<ZipShort, Class<?>>();
-    register(AsiExtraField.class);
+    implementations = new ConcurrentHashMap<ZipShort, ExtraFieldFactory>();
+    register(new AsiExtraField().getHeaderId(), new ExtraFieldFactory() {
+      public ZipExtraField create() {
+        return new AsiExtraField();
+      }
+    });
   }
 
   /**
@@ -60,10 +77,22 @@ public class ExtraFieldUtils {
    * 
    * @since 1.1
    */
-  public static void register(Class<?> c) {
+  public static void register(final Class<?> c) {
     try {
       ZipExtraField ze = (ZipExtraField) c.newInstance();
-      implementations.put(ze.getHeaderId(), c);
+      implementations.put(ze.getHeaderId(), new ExtraFieldFactory() {
+        public ZipExtraField create() {
+          try {
+            return (ZipExtraField) c.newInstance();
+          }
+          catch (InstantiationException ie) {
+            throw new RuntimeException(c + " is not a concrete class");
+          }
+          catch (IllegalAccessException ie) {
+            throw new RuntimeException(c + "\'s no-arg constructor is not public");
+          }
+        }
+      });
     }
     catch (ClassCastException cc) {
       throw new RuntimeException(c + " doesn\'t implement ZipExtraField");
@@ -76,6 +105,18 @@ public class ExtraFieldUtils {
     }
   }
 
+  /**
+   * Register a factory of a ZipExtraField implementation.
+   * 
+   * @param headerId the header identifier of the extra fields created
+   * @param factory the factory creating the extra fields
+   * 
+   * @since 1.9
+   */
+  public static void register(ZipShort headerId, ExtraFieldFactory factory) {
+    implementations.put(headerId, factory);
+  }
+
   /**
    * Create an instance of the appropriate ExtraField, falls back to {@link UnrecognizedExtraField UnrecognizedExtraField}.
    * 
@@ -87,9 +128,9 @@ public class ExtraFieldUtils {
    */
   public static ZipExtraField createExtraField(ZipShort headerId)
       throws InstantiationException, IllegalAccessException {
-    Class<?> c = implementations.get(headerId);
-    if (c != null) {
-      return (ZipExtraField) c.newInstance();
+    ExtraFieldFactory factory = implementations.get(headerId);
+    if (factory != null) {
+      return factory.create();
     }
     UnrecognizedExtraField u = new UnrecognizedExtraField();
     u.setHeaderId(headerId);
@@ -144,6 +185,41 @@ public class ExtraFieldUtils {
     return v;
   }
 
+  /**
+   * Find the data of the last extra field with the given header identifier, without creating
+   * any objects. The length of the data is the short preceding it.
+   * 
+   * @param data an array of bytes as it appears in local file data, may be <code>null</code>
+   * @param headerId the header identifier
+   * @return the offset of the field data or -1 if there is no such field
+   * @throws ZipException if the data cannot be parsed
+   * 
+   * @since 1.9
+   */
+  public static int indexOfLast(byte[] data, int headerId) throws ZipException {
+    int result = -1;
+    if (data == null) {
+      return result;
+    }
+    int start = 0;
+    while (start <= data.length - WORD) {
+      int length = ZipShort.getValue(data, start + 2);
+      if (start + WORD + length > data.length) {
+        throw new ZipException("bad extra field starting at "
+            + start + ".  Block length of "
+            + length + " bytes exceeds remaining"
+            + " data of "
+            + (data.length - start - WORD)
+            + " bytes.");
+      }
+      if (ZipShort.getValue(data, start) == headerId) {
+        result = start + WORD;
+      }
+      start += (length + WORD);
+    }
+    return result;
+  }
+
   /**
    * Merges the local file data fields of the given ZipExtraFields.
    * 
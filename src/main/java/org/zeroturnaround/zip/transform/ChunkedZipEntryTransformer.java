@@ -0,0 +1,260 @@
+package org.zeroturnaround.zip.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+import org.zeroturnaround.zip.commons.IOUtils;
+
+/**
+ * Transformer which is given the contents of an entry in chunks as they are read, so the entry is
+ * never held in memory as a whole.
+ * <p>
+ * For each entry a {@link ChunkHandler} is created with {@link #start(ZipEntry)}. It receives every
+ * chunk of the entry contents with {@link ChunkHandler#chunk(ByteBuffer, OutputStream)} and is
+ * finally notified with {@link ChunkHandler#complete(OutputStream)}. Both may write the
+ * transformed contents to the given stream at any time. A handler which is also {@link Closeable}
+ * is closed if the entry cannot be transformed completely, e.g. to delete its temporary files.
+ * <p>
+ * Existing {@link ByteArrayZipEntryTransformer}s, {@link StringZipEntryTransformer}s and
+ * {@link FileZipEntryTransformer}s can be driven by the same contract with the <code>adapt</code>
+ * methods. Those still collect the whole entry, as their transformations require it.
+ *
+ * @since 1.9
+ */
+public abstract class ChunkedZipEntryTransformer implements ZipEntryTransformer {
+
+  /**
+   * Receives the contents of a single entry.
+   */
+  public interface ChunkHandler {
+
+    /**
+     * Transforms the next chunk of the entry contents.
+     *
+     * @param chunk
+     *          the bytes between its position and limit, only valid during this call.
+     * @param out
+     *          stream to write the transformed contents, it must not be closed.
+     *
+     * @throws IOException if anything goes wrong
+     */
+    void chunk(ByteBuffer chunk, OutputStream out) throws IOException;
+
+    /**
+     * Called once all the chunks of the entry have been given.
+     *
+     * @param out
+     *          stream to write the rest of the transformed contents, it must not be closed.
+     *
+     * @throws IOException if anything goes wrong
+     */
+    void complete(OutputStream out) throws IOException;
+
+  }
+
+  /**
+   * Starts transforming an entry.
+   *
+   * @param zipEntry
+   *          zip entry metadata
+   *
+   * @return handler receiving the contents of the entry.
+   *
+   * @throws IOException if anything goes wrong
+   */
+  protected abstract ChunkHandler start(ZipEntry zipEntry) throws IOException;
+
+  /**
+   * Override to return true if needed.
+   *
+   * @return true if this transformer should preserve timestamp of the entry it transforms, false otherwise
+   */
+  protected boolean preserveTimestamps() {
+    return false;
+  }
+
+  /**
+   * Reads the entry contents chunk by chunk and writes the transformed entry to the output stream.
+   *
+   * @param in input stream of the entry contents
+   * @param zipEntry zip entry metadata
+   * @param out output stream to write transformed entry
+   *
+   * @throws IOException if anything goes wrong
+   */
+  public void transform(InputStream in, ZipEntry zipEntry, ZipOutputStream out) throws IOException {
+    ZipEntry entry = new ZipEntry(zipEntry.getName());
+    entry.setTime(preserveTimestamps() ? zipEntry.getTime() : System.currentTimeMillis());
+    out.putNextEntry(entry);
+
+    ChunkHandler handler = start(zipEntry);
+
+    byte[] buffer = IOUtils.acquireCopyBuffer();
+    boolean completed = false;
+    try {
+      ByteBuffer chunk = ByteBuffer.wrap(buffer);
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        chunk.clear();
+        chunk.limit(n);
+        handler.chunk(chunk, out);
+      }
+      // the handler may copy data itself once complete
+      IOUtils.releaseCopyBuffer(buffer);
+      buffer = null;
+      handler.complete(out);
+      completed = true;
+    }
+    finally {
+      IOUtils.releaseCopyBuffer(buffer);
+      if (!completed && handler instanceof Closeable) {
+        try {
+          ((Closeable) handler).close();
+        }
+        catch (IOException e) {
+          // closing quietly
+        }
+      }
+    }
+    out.closeEntry();
+  }
+
+  /**
+   * Drives the given transformer by chunks, the chunks are collected into a byte array.
+   *
+   * @param transformer byte array transformer.
+   * @return chunked transformer with the same result.
+   */
+  public static ChunkedZipEntryTransformer adapt(final ByteArrayZipEntryTransformer transformer) {
+    return new ChunkedZipEntryTransformer() {
+      protected ChunkHandler start(final ZipEntry zipEntry) {
+        final ByteArrayOutputStream bytes = newBuffer(zipEntry);
+        return new ChunkHandler() {
+          public void chunk(ByteBuffer chunk, OutputStream out) {
+            bytes.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+          }
+
+          public void complete(OutputStream out) throws IOException {
+            out.write(transformer.transform(zipEntry, bytes.toByteArray()));
+          }
+        };
+      }
+
+      protected boolean preserveTimestamps() {
+        return transformer.preserveTimestamps();
+      }
+    };
+  }
+
+  /**
+   * Drives the given transformer by chunks, the chunks are collected and decoded into a String.
+   *
+   * @param transformer String transformer.
+   * @return chunked transformer with the same result.
+   */
+  public static ChunkedZipEntryTransformer adapt(final StringZipEntryTransformer transformer) {
+    return new ChunkedZipEntryTransformer() {
+      protected ChunkHandler start(final ZipEntry zipEntry) {
+        final ByteArrayOutputStream bytes = newBuffer(zipEntry);
+        return new ChunkHandler() {
+          public void chunk(ByteBuffer chunk, OutputStream out) {
+            bytes.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+          }
+
+          public void complete(OutputStream out) throws IOException {
+            String encoding = transformer.getEncoding();
+            String data = encoding == null ? bytes.toString() : bytes.toString(encoding);
+            data = transformer.transform(zipEntry, data);
+            out.write(encoding == null ? data.getBytes() : data.getBytes(encoding));
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Drives the given transformer by chunks, the chunks are written into a temporary file.
+   *
+   * @param transformer file transformer.
+   * @return chunked transformer with the same result.
+   */
+  public static ChunkedZipEntryTransformer adapt(final FileZipEntryTransformer transformer) {
+    return new ChunkedZipEntryTransformer() {
+      protected ChunkHandler start(ZipEntry zipEntry) throws IOException {
+        return new FileChunkHandler(transformer, zipEntry);
+      }
+    };
+  }
+
+  private static ByteArrayOutputStream newBuffer(ZipEntry zipEntry) {
+    long size = zipEntry.getSize();
+    return new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 32);
+  }
+
+  /**
+   * Writes the chunks into a temporary file which is transformed once complete.
+   */
+  private static class FileChunkHandler implements ChunkHandler, Closeable {
+
+    private final FileZipEntryTransformer transformer;
+
+    private final ZipEntry zipEntry;
+
+    private final File inFile;
+
+    private final FileOutputStream inFileOut;
+
+    private final FileChannel channel;
+
+    FileChunkHandler(FileZipEntryTransformer transformer, ZipEntry zipEntry) throws IOException {
+      this.transformer = transformer;
+      this.zipEntry = zipEntry;
+      inFile = File.createTempFile("zip", null);
+      try {
+        inFileOut = new FileOutputStream(inFile);
+      }
+      catch (IOException e) {
+        FileUtils.deleteQuietly(inFile);
+        throw e;
+      }
+      channel = inFileOut.getChannel();
+    }
+
+    public void chunk(ByteBuffer chunk, OutputStream out) throws IOException {
+      while (chunk.hasRemaining()) {
+        channel.write(chunk);
+      }
+    }
+
+    public void complete(OutputStream out) throws IOException {
+      File outFile = null;
+      try {
+        inFileOut.close();
+        outFile = File.createTempFile("zip", null);
+        transformer.transform(zipEntry, inFile, outFile);
+        FileUtils.copy(outFile, out);
+      }
+      finally {
+        close();
+        FileUtils.deleteQuietly(outFile);
+      }
+    }
+
+    public void close() {
+      IOUtils.closeQuietly(inFileOut);
+      FileUtils.deleteQuietly(inFile);
+    }
+
+  }
+
+}
@@ -23,6 +23,13 @@ public abstract class StringZipEntryTransformer implements ZipEntryTransformer {
     this.encoding = encoding;
   }
 
+  /**
+   * @return the encoding to use, null means platform default.
+   */
+  String getEncoding() {
+    return encoding;
+  }
+
   /**
    * Transforms the given String into a new one.
    *
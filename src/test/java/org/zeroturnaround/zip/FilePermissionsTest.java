@@ -33,6 +33,31 @@ public class FilePermissionsTest extends TestCase {
     assertFalse(canExecute(fileB));
   }
   
+  public void testReadAttributes() throws Exception {
+    File tmpDir = File.createTempFile("FilePermissionsTest-", null);
+    tmpDir.delete();
+    tmpDir.mkdir();
+    try {
+      File file = new File(tmpDir, "file.txt");
+      FileUtils.copyFile(testFile, file);
+      setExecutable(file, true);
+
+      ZTFileAttributes attributes = ZTFilePermissionsUtil.readAttributes(file);
+      assertFalse(attributes.isDirectory());
+      assertEquals(file.length(), attributes.getSize());
+      assertEquals(file.lastModified(), attributes.getLastModified());
+      if (attributes.getPermissions() != null) {
+        assertTrue(attributes.getPermissions().isOwnerCanExecute());
+        assertTrue(attributes.getPermissions().isOwnerCanRead());
+      }
+
+      assertTrue(ZTFilePermissionsUtil.readAttributes(tmpDir).isDirectory());
+    }
+    finally {
+      FileUtils.deleteDirectory(tmpDir);
+    }
+  }
+  
   private boolean canExecute(File file) throws Exception {
     return (Boolean) File.class.getDeclaredMethod("canExecute").invoke(file);
   }
@@ -5,7 +5,9 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -52,4 +54,15 @@ public class ZTFileUtilTest extends TestCase {
     Collection files = ZTFileUtil.listFiles(new File("don'tExist"), null);
     assertEquals(files.size(), 0);
   }
+
+  public void testListFilesWithAttributes() {
+    File dir = new File("src/test/resources/testDirectory");
+    Map<File, ZTFileAttributes> files = ZTFileUtil.listFilesWithAttributes(dir);
+    assertEquals(new ArrayList<File>(ZTFileUtil.listFiles(dir)), new ArrayList<File>(files.keySet()));
+    for (Map.Entry<File, ZTFileAttributes> it : files.entrySet()) {
+      assertFalse(it.getValue().isDirectory());
+      assertEquals(it.getKey().length(), it.getValue().getSize());
+      assertEquals(it.getKey().lastModified(), it.getValue().getLastModified());
+    }
+  }
 }
@@ -0,0 +1,131 @@
+package org.zeroturnaround.zip;
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+
+public class ZipCodecPoolTest extends TestCase {
+
+  private int maxIdle;
+
+  protected void setUp() throws Exception {
+    maxIdle = ZipCodecPool.getMaxIdle();
+    ZipCodecPool.clear();
+  }
+
+  protected void tearDown() throws Exception {
+    ZipCodecPool.setMaxIdle(maxIdle);
+    ZipCodecPool.clear();
+  }
+
+  public void testReuse() {
+    ZipCodecPool.setMaxIdle(1);
+    Deflater def = ZipCodecPool.acquireDeflater(Deflater.BEST_SPEED);
+    ZipCodecPool.release(def, Deflater.BEST_SPEED);
+    assertSame(def, ZipCodecPool.acquireDeflater(Deflater.BEST_SPEED));
+    assertNotSame(def, ZipCodecPool.acquireDeflater(Deflater.BEST_SPEED));
+
+    Inflater inf = ZipCodecPool.acquireInflater();
+    Inflater other = ZipCodecPool.acquireInflater();
+    ZipCodecPool.release(inf);
+    ZipCodecPool.release(other);
+    assertEquals(1, ZipCodecPool.size());
+    assertSame(inf, ZipCodecPool.acquireInflater());
+  }
+
+  public void testClear() throws IOException {
+    File zip = File.createTempFile("temp", ".zip");
+    try {
+      FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+      ZipUtil.addEntry(zip, "new.txt", "new".getBytes());
+      assertEquals("new", new String(ZipUtil.unpackEntry(zip, "new.txt")));
+      assertTrue(ZipCodecPool.size() > 0);
+
+      ZipCodecPool.clear();
+      assertEquals(0, ZipCodecPool.size());
+
+      ZipCodecPool.setMaxIdle(0);
+      ZipUtil.addEntry(zip, "newer.txt", "newer".getBytes());
+      assertEquals(0, ZipCodecPool.size());
+      assertEquals("newer", new String(ZipUtil.unpackEntry(zip, "newer.txt")));
+    }
+    finally {
+      FileUtils.deleteQuietly(zip);
+    }
+  }
+
+  public void testStreamIterationReleasesInflater() throws IOException {
+    File zip = File.createTempFile("temp", ".zip");
+    try {
+      // deflated entries with data descriptors
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+      try {
+        for (int i = 0; i < 3; i++) {
+          out.putNextEntry(new ZipEntry("file" + i + ".txt"));
+          out.write(("content " + i).getBytes());
+          out.closeEntry();
+        }
+      }
+      finally {
+        out.close();
+      }
+
+      // neither the last requested entry nor the one with a break is read to its end
+      ZipEntryCallback readOneByte = new ZipEntryCallback() {
+        public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+          assertTrue(in.read() != -1);
+        }
+      };
+      iterate(zip, new String[] { "file0.txt", "file1.txt" }, readOneByte);
+      assertEquals(1, ZipCodecPool.size());
+
+      ZipCodecPool.clear();
+      iterate(zip, new String[] { "file1.txt", "file2.txt" }, new ZipEntryCallback() {
+        public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+          assertTrue(in.read() != -1);
+          throw new ZipBreakException();
+        }
+      });
+      assertEquals(1, ZipCodecPool.size());
+    }
+    finally {
+      FileUtils.deleteQuietly(zip);
+    }
+  }
+
+  private static void iterate(File zip, String[] names, ZipEntryCallback action) throws IOException {
+    InputStream in = new FileInputStream(zip);
+    try {
+      ZipUtil.iterate(in, names, action);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+}
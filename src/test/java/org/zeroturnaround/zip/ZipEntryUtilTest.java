@@ -1,9 +1,17 @@
 package org.zeroturnaround.zip;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.ZipEntry;
 
 import junit.framework.TestCase;
 
+import org.zeroturnaround.zip.extra.AsiExtraField;
+import org.zeroturnaround.zip.extra.ExtraFieldUtils;
+import org.zeroturnaround.zip.extra.UnrecognizedExtraField;
+import org.zeroturnaround.zip.extra.ZipExtraField;
+import org.zeroturnaround.zip.extra.ZipShort;
+
 
 public class ZipEntryUtilTest extends TestCase {
   
@@ -20,4 +28,34 @@ public class ZipEntryUtilTest extends TestCase {
     
     assertNull(ZipEntryUtil.getZTFilePermissions(entry));
   }
+
+  public void testGetUnixModeAfterOtherExtraFields() throws Exception {
+    UnrecognizedExtraField other = new UnrecognizedExtraField();
+    other.setHeaderId(new ZipShort(0x5455));
+    other.setLocalFileDataData(new byte[] { 1, 2, 3 });
+    AsiExtraField asi = new AsiExtraField();
+    asi.setMode(0751);
+    List<ZipExtraField> fields = new ArrayList<ZipExtraField>();
+    fields.add(other);
+    fields.add(asi);
+
+    ZipEntry entry = new ZipEntry("test3");
+    entry.setExtra(ExtraFieldUtils.mergeLocalFileDataData(fields));
+    assertEquals(0751, ZTFilePermissionsUtil.toPosixFileMode(ZipEntryUtil.getZTFilePermissions(entry)));
+  }
+
+  public void testGetUnixModeWithBadChecksum() throws Exception {
+    ZipEntry entry = new ZipEntry("test4");
+    ZipEntryUtil.setZTFilePermissions(entry, ZTFilePermissionsUtil.fromPosixFileMode(0644));
+    byte[] extra = entry.getExtra();
+    extra[extra.length - 1]++;
+    entry.setExtra(extra);
+    try {
+      ZipEntryUtil.getZTFilePermissions(entry);
+      fail();
+    }
+    catch (ZipException e) {
+      // expected
+    }
+  }
 }
@@ -0,0 +1,70 @@
+package org.zeroturnaround.zip;
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+
+public class ZipFileCacheTest extends TestCase {
+
+  protected void tearDown() throws Exception {
+    ZipFileCache.disable();
+  }
+
+  public void testDisabledByDefault() {
+    assertFalse(ZipFileCache.isEnabled());
+    assertTrue(ZipUtil.containsEntry(new File(MainExamplesTest.DEMO_ZIP), "foo.txt"));
+    assertEquals(0, ZipFileCache.size());
+  }
+
+  public void testReusesOpenFile() {
+    ZipFileCache.enable(2);
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    assertTrue(ZipUtil.containsEntry(src, "foo.txt"));
+    assertNotNull(ZipUtil.unpackEntry(src, "foo.txt"));
+    assertEquals(ZipEntry.STORED, ZipUtil.getCompressionLevelOfEntry(src, "foo.txt"));
+    assertTrue(ZipUtil.containsAnyEntry(src, new String[] { "bar.txt" }));
+    assertEquals(1, ZipFileCache.size());
+  }
+
+  public void testEvictsLeastRecentlyUsed() {
+    ZipFileCache.enable(1);
+    assertTrue(ZipUtil.containsEntry(new File(MainExamplesTest.DEMO_ZIP), "foo.txt"));
+    assertTrue(ZipUtil.containsEntry(new File("src/test/resources/demo-dirs.zip"), "a/b.txt"));
+    assertEquals(1, ZipFileCache.size());
+  }
+
+  public void testReopensChangedFile() throws IOException {
+    ZipFileCache.enable(2);
+    File zip = File.createTempFile("temp", ".zip");
+    try {
+      FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+      assertTrue(ZipUtil.containsEntry(zip, "foo.txt"));
+      ZipUtil.removeEntry(zip, "foo.txt");
+      assertFalse(ZipUtil.containsEntry(zip, "foo.txt"));
+      assertTrue(ZipUtil.containsEntry(zip, "bar.txt"));
+    }
+    finally {
+      FileUtils.deleteQuietly(zip);
+    }
+  }
+
+}
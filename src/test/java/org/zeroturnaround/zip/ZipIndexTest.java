@@ -0,0 +1,161 @@
+package org.zeroturnaround.zip;
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+
+public class ZipIndexTest extends TestCase {
+
+  private File zip;
+
+  protected void setUp() throws Exception {
+    zip = File.createTempFile("temp", ".zip");
+    ZipIndex.enable();
+  }
+
+  protected void tearDown() throws Exception {
+    ZipIndex.disable();
+    FileUtils.deleteQuietly(ZipIndex.getIndexFile(zip));
+    FileUtils.deleteQuietly(zip);
+  }
+
+  public void testLookup() throws IOException {
+    FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+    assertNull(ZipIndex.open(zip));
+
+    ZipIndex.build(zip);
+    ZipIndex index = ZipIndex.open(zip);
+    assertNotNull(index);
+    try {
+      assertTrue(index.containsEntry("foo.txt"));
+      assertFalse(index.containsEntry("missing.txt"));
+      assertEquals(ZipEntry.STORED, index.getCompressionMethod("foo.txt"));
+      assertEquals(-1, index.getCompressionMethod("missing.txt"));
+      assertNull(index.unpackEntry("missing.txt"));
+    }
+    finally {
+      index.close();
+    }
+
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    assertTrue(Arrays.equals(ZipUtil.unpackEntry(src, "bar.txt"), ZipUtil.unpackEntry(zip, "bar.txt")));
+    assertTrue(ZipUtil.containsAnyEntry(zip, new String[] { "missing.txt", "foo.txt" }));
+  }
+
+  public void testDuplicateEntries() throws IOException {
+    FileUtils.copyFile(new File(MainExamplesTest.DUPLICATE_ZIP), zip);
+    // the last entry of a name is found, like in ZipFile
+    assertEquals("bar3", new String(ZipUtil.unpackEntry(zip, "foo.txt")));
+
+    ZipIndex.build(zip);
+    ZipIndex index = ZipIndex.open(zip);
+    try {
+      assertEquals(1, index.size());
+      assertEquals("bar3", new String(index.unpackEntry("foo.txt")));
+    }
+    finally {
+      index.close();
+    }
+    assertEquals("bar3", new String(ZipUtil.unpackEntry(zip, "foo.txt")));
+  }
+
+  public void testManyEntries() throws IOException {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+    try {
+      for (int i = 0; i < 2000; i++) {
+        out.putNextEntry(new ZipEntry("dir" + (i % 10) + "/file" + i + ".txt"));
+        out.write(("content " + i).getBytes());
+        out.closeEntry();
+      }
+    }
+    finally {
+      out.close();
+    }
+
+    ZipIndex.build(zip);
+    ZipIndex index = ZipIndex.open(zip);
+    try {
+      assertEquals(2000, index.size());
+      for (int i = 0; i < 2000; i++) {
+        String name = "dir" + (i % 10) + "/file" + i + ".txt";
+        assertEquals("content " + i, new String(index.unpackEntry(name)));
+        assertEquals(ZipEntry.DEFLATED, index.getCompressionMethod(name));
+      }
+    }
+    finally {
+      index.close();
+    }
+  }
+
+  public void testIndexIsOptIn() throws IOException {
+    FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+    ZipIndex.build(zip);
+    int count = ZipIndex.open(zip).size();
+    // mark all the entries as deflated in the index only
+    RandomAccessFile index = new RandomAccessFile(ZipIndex.getIndexFile(zip), "rw");
+    try {
+      for (int i = 0; i < count; i++) {
+        index.seek(ZipIndex.HEADER_SIZE + (long) i * ZipIndex.RECORD_SIZE + 10);
+        index.writeShort(ZipEntry.DEFLATED);
+      }
+    }
+    finally {
+      index.close();
+    }
+
+    assertEquals(ZipEntry.DEFLATED, ZipUtil.getCompressionLevelOfEntry(zip, "foo.txt"));
+    ZipIndex.disable();
+    assertEquals(ZipEntry.STORED, ZipUtil.getCompressionLevelOfEntry(zip, "foo.txt"));
+  }
+
+  public void testTruncatedIndexIsIgnored() throws IOException {
+    FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+    File indexFile = ZipIndex.build(zip);
+    RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+    try {
+      index.setLength(index.length() / 2);
+    }
+    finally {
+      index.close();
+    }
+
+    assertNull(ZipIndex.open(zip));
+    assertTrue(ZipUtil.containsEntry(zip, "foo.txt"));
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    assertTrue(Arrays.equals(ZipUtil.unpackEntry(src, "bar.txt"), ZipUtil.unpackEntry(zip, "bar.txt")));
+  }
+
+  public void testOutdatedIndexIsIgnored() throws IOException {
+    FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+    ZipIndex.build(zip);
+    ZipUtil.removeEntry(zip, "foo.txt");
+
+    assertNull(ZipIndex.open(zip));
+    assertFalse(ZipUtil.containsEntry(zip, "foo.txt"));
+    assertTrue(ZipUtil.containsEntry(zip, "bar.txt"));
+  }
+
+}
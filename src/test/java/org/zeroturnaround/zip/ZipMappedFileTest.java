@@ -0,0 +1,93 @@
+package org.zeroturnaround.zip;
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.zeroturnaround.zip.commons.IOUtils;
+
+public class ZipMappedFileTest extends TestCase {
+
+  protected void tearDown() throws Exception {
+    ZipReaderBackend.setDefault(null);
+  }
+
+  public void testEntries() throws IOException {
+    ZipMappedFile zf = new ZipMappedFile(new File(MainExamplesTest.DEMO_ZIP));
+    try {
+      int index = zf.indexOf("foo.txt");
+      assertTrue(index >= 0);
+      assertEquals(-1, zf.indexOf("missing.txt"));
+      assertEquals("foo.txt", zf.getName(index));
+      assertEquals(ZipEntry.STORED, zf.getMethod(index));
+
+      ByteBuffer data = zf.getStoredData(index);
+      assertEquals(zf.getSize(index), data.remaining());
+      byte[] expected = ZipUtil.unpackEntry(new File(MainExamplesTest.DEMO_ZIP), "foo.txt");
+      assertEquals(ByteBuffer.wrap(expected), data);
+    }
+    finally {
+      zf.close();
+    }
+  }
+
+  public void testIterateIsSameAsZipFile() {
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    List<String> expected = collect(src);
+    ZipReaderBackend.setDefault(ZipReaderBackend.MAPPED);
+    assertEquals(expected, collect(src));
+  }
+
+  public void testIterateGivenEntries() {
+    ZipReaderBackend.setDefault(ZipReaderBackend.MAPPED);
+    final List<String> names = new ArrayList<String>();
+    ZipUtil.iterate(new File(MainExamplesTest.DEMO_ZIP), new String[] { "bar.txt", "missing.txt" }, new ZipInfoCallback() {
+      public void process(ZipEntry zipEntry) throws IOException {
+        names.add(zipEntry.getName());
+      }
+    });
+    assertEquals(1, names.size());
+    assertEquals("bar.txt", names.get(0));
+  }
+
+  public void testArchiveEquals() {
+    ZipReaderBackend.setDefault(ZipReaderBackend.MAPPED);
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    assertTrue(ZipUtil.archiveEquals(src, new File("src/test/resources/demo-copy.zip")));
+    assertTrue(ZipUtil.archiveEquals(src, new File("src/test/resources/demo-copy-II.zip")));
+    assertFalse(ZipUtil.archiveEquals(src, new File(MainExamplesTest.DUPLICATE_ZIP)));
+  }
+
+  private static List<String> collect(File zip) {
+    final List<String> result = new ArrayList<String>();
+    ZipUtil.iterate(zip, new ZipEntryCallback() {
+      public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+        result.add(zipEntry.getName() + " " + zipEntry.getMethod() + " " + zipEntry.getSize() + " "
+            + zipEntry.getCrc() + " " + zipEntry.getTime() + " " + new String(IOUtils.toByteArray(in)));
+      }
+    });
+    return result;
+  }
+
+}
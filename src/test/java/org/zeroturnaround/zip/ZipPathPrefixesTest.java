@@ -0,0 +1,56 @@
+package org.zeroturnaround.zip;
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ZipPathPrefixesTest extends TestCase {
+
+  public void testEmpty() {
+    ZipPathPrefixes prefixes = new ZipPathPrefixes();
+    assertTrue(prefixes.isEmpty());
+    assertFalse(prefixes.contains("a/b.txt"));
+  }
+
+  public void testContains() {
+    ZipPathPrefixes prefixes = new ZipPathPrefixes(Arrays.asList(new String[] { "a/", "b/c/", "d" }));
+    assertFalse(prefixes.isEmpty());
+    assertTrue(prefixes.contains("a/"));
+    assertTrue(prefixes.contains("a/x.txt"));
+    assertTrue(prefixes.contains("a/x/y.txt"));
+    assertTrue(prefixes.contains("b/c/x.txt"));
+    assertTrue(prefixes.contains("d/x.txt"));
+    assertFalse(prefixes.contains("a"));
+    assertFalse(prefixes.contains("ab/x.txt"));
+    assertFalse(prefixes.contains("b/"));
+    assertFalse(prefixes.contains("b/x.txt"));
+    assertFalse(prefixes.contains("b/cd/x.txt"));
+    assertFalse(prefixes.contains("x/a/y.txt"));
+  }
+
+  public void testNestedDirs() {
+    ZipPathPrefixes prefixes = new ZipPathPrefixes();
+    prefixes.add("a/b/");
+    prefixes.add("a/");
+    prefixes.add("a/c/");
+    assertTrue(prefixes.contains("a/x.txt"));
+    assertTrue(prefixes.contains("a/b/x.txt"));
+    assertTrue(prefixes.contains("a/c/x.txt"));
+  }
+
+}
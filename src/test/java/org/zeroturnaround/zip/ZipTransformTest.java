@@ -14,6 +14,7 @@ package org.zeroturnaround.zip;
  *    See the License for the specific language governing permissions and
  *    limitations under the License.
  */
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -21,6 +22,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -29,9 +31,11 @@ import junit.framework.TestCase;
 import org.zeroturnaround.zip.commons.FileUtils;
 import org.zeroturnaround.zip.commons.IOUtils;
 import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
+import org.zeroturnaround.zip.transform.ChunkedZipEntryTransformer;
 import org.zeroturnaround.zip.transform.FileZipEntryTransformer;
 import org.zeroturnaround.zip.transform.StreamZipEntryTransformer;
 import org.zeroturnaround.zip.transform.StringZipEntryTransformer;
+import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
 
 public class ZipTransformTest extends TestCase {
 
@@ -292,4 +296,134 @@ public class ZipTransformTest extends TestCase {
       FileUtils.deleteQuietly(file2);
     }
   }
+
+  public void testChunkedTransformer() throws IOException {
+    final String name = "foo";
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append("bar").append(i);
+    }
+    final String contents = sb.toString();
+
+    File file1 = File.createTempFile("temp", null);
+    File file2 = File.createTempFile("temp", null);
+    try {
+      ZipUtil.pack(new ZipEntrySource[] { new ByteSource(name, contents.getBytes()) }, file1);
+
+      // Transform the ZIP file, counting the chunks given
+      final int[] chunks = new int[1];
+      ZipUtil.transformEntry(file1, name, new ChunkedZipEntryTransformer() {
+        protected ChunkHandler start(ZipEntry zipEntry) {
+          return new ChunkHandler() {
+            public void chunk(ByteBuffer chunk, OutputStream out) throws IOException {
+              chunks[0]++;
+              while (chunk.hasRemaining()) {
+                out.write(Character.toUpperCase((char) chunk.get()));
+              }
+            }
+
+            public void complete(OutputStream out) throws IOException {
+              out.write("!".getBytes());
+            }
+          };
+        }
+      }, file2);
+
+      assertTrue(chunks[0] > 1);
+      byte[] actual = ZipUtil.unpackEntry(file2, name);
+      assertEquals(contents.toUpperCase() + "!", new String(actual));
+    }
+    finally {
+      FileUtils.deleteQuietly(file1);
+      FileUtils.deleteQuietly(file2);
+    }
+  }
+
+  public void testChunkedHandlerClosedOnFailure() throws IOException {
+    final String name = "foo";
+    File file1 = File.createTempFile("temp", null);
+    File file2 = File.createTempFile("temp", null);
+    try {
+      ZipUtil.pack(new ZipEntrySource[] { new ByteSource(name, "bar".getBytes()) }, file1);
+
+      final boolean[] closed = new boolean[1];
+      try {
+        ZipUtil.transformEntry(file1, name, new ChunkedZipEntryTransformer() {
+          protected ChunkHandler start(ZipEntry zipEntry) {
+            return new FailingChunkHandler(closed);
+          }
+        }, file2);
+        fail("The handler failed");
+      }
+      catch (ZipException e) {
+        // expected
+      }
+      assertTrue(closed[0]);
+    }
+    finally {
+      FileUtils.deleteQuietly(file1);
+      FileUtils.deleteQuietly(file2);
+    }
+  }
+
+  private static class FailingChunkHandler implements ChunkedZipEntryTransformer.ChunkHandler, Closeable {
+
+    private final boolean[] closed;
+
+    FailingChunkHandler(boolean[] closed) {
+      this.closed = closed;
+    }
+
+    public void chunk(ByteBuffer chunk, OutputStream out) {
+    }
+
+    public void complete(OutputStream out) throws IOException {
+      throw new IOException("Transformation failed");
+    }
+
+    public void close() {
+      closed[0] = true;
+    }
+  }
+
+  public void testChunkedAdapters() throws IOException {
+    File file1 = File.createTempFile("temp", null);
+    File file2 = File.createTempFile("temp", null);
+    try {
+      ZipUtil.pack(new ZipEntrySource[] { new ByteSource("a", "foo".getBytes()), new ByteSource("b", "bar".getBytes()),
+          new ByteSource("c", "baz".getBytes()) }, file1);
+
+      ZipUtil.transformEntries(file1, new ZipEntryTransformerEntry[] {
+          new ZipEntryTransformerEntry("a", ChunkedZipEntryTransformer.adapt(new ByteArrayZipEntryTransformer() {
+            protected byte[] transform(ZipEntry zipEntry, byte[] input) throws IOException {
+              return new String(input).toUpperCase().getBytes();
+            }
+          })),
+          new ZipEntryTransformerEntry("b", ChunkedZipEntryTransformer.adapt(new StringZipEntryTransformer("UTF-8") {
+            protected String transform(ZipEntry zipEntry, String input) throws IOException {
+              return input + input;
+            }
+          })),
+          new ZipEntryTransformerEntry("c", ChunkedZipEntryTransformer.adapt(new FileZipEntryTransformer() {
+            protected void transform(ZipEntry zipEntry, File in, File out) throws IOException {
+              FileUtils.copyFile(in, out);
+              FileWriter writer = new FileWriter(out, true);
+              try {
+                writer.write("!");
+              }
+              finally {
+                writer.close();
+              }
+            }
+          })) }, file2);
+
+      assertEquals("FOO", new String(ZipUtil.unpackEntry(file2, "a")));
+      assertEquals("barbar", new String(ZipUtil.unpackEntry(file2, "b")));
+      assertEquals("baz!", new String(ZipUtil.unpackEntry(file2, "c")));
+    }
+    finally {
+      FileUtils.deleteQuietly(file1);
+      FileUtils.deleteQuietly(file2);
+    }
+  }
 }
@@ -0,0 +1,129 @@
+package org.zeroturnaround.zip;
+/**
+ *    Copyright (C) 2012 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.zeroturnaround.zip.commons.FileUtils;
+import org.zeroturnaround.zip.transform.ZipEntryTransformer;
+import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
+
+public class ZipUtilAsyncTest extends TestCase {
+
+  private ExecutorService executor;
+
+  private File dir;
+
+  protected void setUp() throws Exception {
+    executor = Executors.newSingleThreadExecutor();
+    dir = File.createTempFile("temp", null);
+    FileUtils.forceDelete(dir);
+    FileUtils.forceMkdir(dir);
+  }
+
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    FileUtils.deleteQuietly(dir);
+  }
+
+  public void testPackAndUnpack() throws Exception {
+    ZipUtilAsync async = new ZipUtilAsync(executor);
+    File zip = new File(dir, "test.zip");
+    File unpacked = new File(dir, "unpacked");
+
+    async.pack(new File(getClass().getClassLoader().getResource("testDirectory").getPath()), zip).get();
+    async.removeEntries(zip, new String[] { "testfileInTestDirectory.txt" }).get();
+    async.unpack(zip, unpacked).get();
+
+    assertTrue(new File(unpacked, "testSubdirectory/testFileInTestSubdirectory.txt").isFile());
+    assertFalse(new File(unpacked, "testfileInTestDirectory.txt").exists());
+  }
+
+  public void testAddOrReplaceEntries() throws Exception {
+    File zip = new File(dir, "demo.zip");
+    FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+
+    ZipUtilAsync async = new ZipUtilAsync(executor);
+    async.addOrReplaceEntries(zip, new ZipEntrySource[] {
+        new ByteSource("foo.txt", "changed".getBytes()),
+        new ByteSource("new.txt", "new".getBytes()) }).get();
+
+    assertEquals("changed", new String(ZipUtil.unpackEntry(zip, "foo.txt")));
+    assertEquals("new", new String(ZipUtil.unpackEntry(zip, "new.txt")));
+  }
+
+  public void testDirectCallIgnoresInterrupt() throws Exception {
+    File zip = new File(dir, "test.zip");
+    final int[] count = new int[1];
+    Thread.currentThread().interrupt();
+    try {
+      ZipUtil.pack(new File(getClass().getClassLoader().getResource("testDirectory").getPath()), zip);
+      ZipUtil.iterate(zip, new ZipInfoCallback() {
+        public void process(ZipEntry zipEntry) {
+          count[0]++;
+        }
+      });
+    }
+    finally {
+      assertTrue(Thread.interrupted());
+    }
+    assertTrue(count[0] > 0);
+  }
+
+  public void testCancelInPlaceOperation() throws Exception {
+    File zip = new File(dir, "demo.zip");
+    FileUtils.copyFile(new File(MainExamplesTest.DEMO_ZIP), zip);
+    long length = zip.length();
+
+    final CountDownLatch started = new CountDownLatch(1);
+    ZipEntryTransformer blocking = new ZipEntryTransformer() {
+      public void transform(InputStream in, ZipEntry zipEntry, ZipOutputStream out) throws IOException {
+        started.countDown();
+        try {
+          Thread.sleep(60000);
+        }
+        catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+    };
+    ZipUtilAsync async = new ZipUtilAsync(executor);
+    Future<Boolean> future = async.transformEntries(zip, new ZipEntryTransformerEntry[] { new ZipEntryTransformerEntry("foo.txt", blocking) });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+
+    assertTrue(future.cancel(true));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    // the temporary file is deleted and the original is kept
+    assertEquals(1, dir.list().length);
+    assertEquals(length, zip.length());
+    assertTrue(ZipUtil.containsEntry(zip, "foo.txt"));
+  }
+
+}
@@ -15,9 +15,12 @@ package org.zeroturnaround.zip;
  *    limitations under the License.
  */
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -34,6 +37,12 @@ public class ZipUtilInPlaceTest extends TestCase {
     return new File(getClass().getClassLoader().getResource(name).getPath());
   }
 
+  private static byte[] readFile(File file) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FileUtils.copy(file, out);
+    return out.toByteArray();
+  }
+
   public void testAddEntry() throws IOException {
     File src = file("demo.zip");
     File dest = File.createTempFile("temp.zip", null);
@@ -52,6 +61,114 @@ public class ZipUtilInPlaceTest extends TestCase {
     }
   }
 
+  public void testAppendEntries() throws IOException {
+    File dest = File.createTempFile("temp.zip", null);
+    try {
+      FileUtils.copyFile(file("demo.zip"), dest);
+      byte[] original = readFile(dest);
+      ZipRawFile zf = new ZipRawFile(dest);
+      long cenOffset = zf.getCentralDirectoryOffset();
+      zf.close();
+
+      ZipUtil.appendEntries(dest, new ZipEntrySource[] {
+          new ByteSource("new.txt", "new".getBytes()),
+          new FileSource("TestFile.txt", file("TestFile.txt")) });
+      ZipUtil.appendEntry(dest, new ByteSource("dir/newer.txt", "newer".getBytes(), ZipEntry.STORED));
+
+      assertEquals("new", new String(ZipUtil.unpackEntry(dest, "new.txt")));
+      assertEquals("newer", new String(ZipUtil.unpackEntry(dest, "dir/newer.txt")));
+      assertTrue(ZipUtil.containsEntry(dest, "TestFile.txt"));
+      assertEquals(new String(ZipUtil.unpackEntry(file("demo.zip"), "foo.txt")), new String(ZipUtil.unpackEntry(dest, "foo.txt")));
+
+      // the existing entries are not moved
+      byte[] appended = readFile(dest);
+      for (int i = 0; i < cenOffset; i++) {
+        assertEquals(original[i], appended[i]);
+      }
+    }
+    finally {
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
+  public void testAppendExistingEntry() throws IOException {
+    File dest = File.createTempFile("temp.zip", null);
+    try {
+      FileUtils.copyFile(file("demo.zip"), dest);
+      byte[] original = readFile(dest);
+      try {
+        ZipUtil.appendEntry(dest, new ByteSource("foo.txt", "new".getBytes()));
+        fail();
+      }
+      catch (ZipException e) {
+        // expected
+      }
+      assertTrue(Arrays.equals(original, readFile(dest)));
+    }
+    finally {
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
+  public void testAppendEntriesFailingMidStream() throws IOException {
+    File dest = File.createTempFile("temp.zip", null);
+    try {
+      FileUtils.copyFile(file("demo.zip"), dest);
+      byte[] original = readFile(dest);
+      try {
+        ZipUtil.appendEntries(dest, new ZipEntrySource[] {
+            new ByteSource("ok.txt", "ok".getBytes()),
+            new FailingSource("bad.bin", 100 * 1024) });
+        fail("The source failed");
+      }
+      catch (ZipException e) {
+        // expected
+      }
+      assertTrue(Arrays.equals(original, readFile(dest)));
+      assertFalse(ZipUtil.containsEntry(dest, "ok.txt"));
+    }
+    finally {
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
+  /**
+   * Source whose stream fails after the given number of bytes.
+   */
+  private static class FailingSource implements ZipEntrySource {
+
+    private final String path;
+
+    private final int length;
+
+    FailingSource(String path, int length) {
+      this.path = path;
+      this.length = length;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public ZipEntry getEntry() {
+      return new ZipEntry(path);
+    }
+
+    public InputStream getInputStream() {
+      return new InputStream() {
+        private int count;
+
+        public int read() throws IOException {
+          if (count++ >= length) {
+            throw new IOException("Failed to read " + path);
+          }
+          return count & 0xff;
+        }
+      };
+    }
+
+  }
+
   public void testRemoveEntry() throws IOException {
     File src = file("demo.zip");
     File dest = File.createTempFile("temp", null);
@@ -90,6 +207,29 @@ public class ZipUtilInPlaceTest extends TestCase {
     }
   }
 
+  public void testRemoveEntryRenamesTempFileInSameDirectory() throws IOException {
+    File dir = File.createTempFile("temp", null);
+    FileUtils.forceDelete(dir);
+    FileUtils.forceMkdir(dir);
+    ZipUtil.setSyncInPlaceUpdates(true);
+    try {
+      File dest = new File(dir, "demo.zip");
+      FileUtils.copyFile(file("demo.zip"), dest);
+      ZipUtil.removeEntry(dest, "bar.txt");
+      Zips.get(dest).removeEntry("foo.txt").process();
+
+      assertFalse(ZipUtil.containsEntry(dest, "bar.txt"));
+      assertFalse(ZipUtil.containsEntry(dest, "foo.txt"));
+      assertTrue(ZipUtil.containsEntry(dest, "foo1.txt"));
+      // no temporary files are left behind
+      assertEquals(1, dir.list().length);
+    }
+    finally {
+      ZipUtil.setSyncInPlaceUpdates(false);
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
   public void testByteArrayTransformer() throws IOException {
     final String name = "foo";
     final byte[] contents = "bar".getBytes();
@@ -17,13 +17,23 @@ package org.zeroturnaround.zip;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -53,6 +63,74 @@ public class ZipUtilTest extends TestCase {
     assertTrue(processed);
   }
 
+  public void testUnpackEntryFromStreamSkipsOtherEntries() throws Exception {
+    byte[] data = new byte[100000];
+    new Random(1).nextBytes(data);
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] compressed = new byte[data.length + 1000];
+    int compressedSize = deflater.deflate(compressed);
+    deflater.end();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ZipOutputStream out = new ZipOutputStream(bytes);
+    // sizes are known in advance, so they are written into the local header
+    ZipEntry entry = new ZipEntry("skipped.bin");
+    entry.setSize(data.length);
+    entry.setCompressedSize(compressedSize);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(data);
+    out.putNextEntry(new ZipEntry("manifest.txt"));
+    out.write("manifest".getBytes());
+    out.close();
+
+    // corrupt the compressed data of the first entry, it must not be inflated
+    byte[] zip = bytes.toByteArray();
+    zip[1000] ^= 0xff;
+    assertEquals("manifest", new String(ZipUtil.unpackEntry(new ByteArrayInputStream(zip), "manifest.txt")));
+  }
+
+  public void testIterateStreamStopsAfterRequestedEntries() throws Exception {
+    byte[] data = new byte[100000];
+    new Random(1).nextBytes(data);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ZipOutputStream out = new ZipOutputStream(bytes);
+    out.putNextEntry(new ZipEntry("first.txt"));
+    out.write("first".getBytes());
+    out.putNextEntry(new ZipEntry("second.bin"));
+    out.write(data);
+    out.putNextEntry(new ZipEntry("third.txt"));
+    out.write("third".getBytes());
+    for (int i = 0; i < 10; i++) {
+      out.putNextEntry(new ZipEntry("rest" + i + ".bin"));
+      out.write(data);
+    }
+    out.close();
+
+    final int[] read = new int[1];
+    InputStream in = new ByteArrayInputStream(bytes.toByteArray()) {
+      public synchronized int read(byte[] b, int off, int len) {
+        int n = super.read(b, off, len);
+        read[0] += Math.max(n, 0);
+        return n;
+      }
+    };
+    final Set<String> found = new HashSet<String>();
+    ZipUtil.iterate(in, new String[] { "third.txt", "first.txt" }, new ZipEntryCallback() {
+      public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+        found.add(zipEntry.getName() + "=" + new String(IOUtils.toByteArray(in)));
+      }
+    });
+    assertEquals(2, found.size());
+    assertTrue(found.contains("first.txt=first"));
+    assertTrue(found.contains("third.txt=third"));
+    assertTrue(read[0] < 3 * data.length);
+  }
+
   public void testPackEntryFile() throws Exception {
     File fileToPack = file("TestFile.txt");
     File dest = File.createTempFile("temp", null);
@@ -224,6 +302,53 @@ public class ZipUtilTest extends TestCase {
     }
   }
 
+  public void testDuplicateEntryAtUnpackFromStream() throws IOException {
+    File src = file("duplicate.zip");
+
+    // a stream is read only until the first entry of the name
+    InputStream is = new FileInputStream(src);
+    try {
+      assertEquals("bar2", new String(ZipUtil.unpackEntry(is, "foo.txt")));
+    }
+    finally {
+      IOUtils.closeQuietly(is);
+    }
+
+    final int[] count = new int[1];
+    is = new FileInputStream(src);
+    try {
+      ZipUtil.iterate(is, new String[] { "foo.txt" }, new ZipEntryCallback() {
+        public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+          count[0]++;
+        }
+      });
+    }
+    finally {
+      IOUtils.closeQuietly(is);
+    }
+    assertEquals(1, count[0]);
+
+    // a file is looked up like in ZipFile, which finds the last one
+    assertEquals("bar3", new String(ZipUtil.unpackEntry(src, "foo.txt")));
+  }
+
+  public void testDuplicateEntryAtRawFile() throws IOException {
+    ZipRawFile zf = new ZipRawFile(file("duplicate.zip"));
+    try {
+      assertEquals(2, zf.size());
+      InputStream in = zf.getInputStream(zf.getEntry("foo.txt"));
+      try {
+        assertEquals("bar3", new String(IOUtils.toByteArray(in)));
+      }
+      finally {
+        in.close();
+      }
+    }
+    finally {
+      zf.close();
+    }
+  }
+
   public void testUnexplode() throws IOException {
     File file = File.createTempFile("tempFile", null);
     File tmpDir = file.getParentFile();
@@ -263,6 +388,215 @@ public class ZipUtilTest extends TestCase {
     assertEquals(103, (new File(dest, "TestFile-II.txt")).length());
   }
 
+  public void testPackWithExecutorIsSameAsSerial() throws Exception {
+    File dir = File.createTempFile("tempDir", null);
+    File serial = File.createTempFile("temp", ".zip");
+    File parallel = File.createTempFile("temp", ".zip");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      FileUtils.forceDelete(dir);
+      FileUtils.copyDirectory(file("testDirectory"), dir);
+      FileUtils.copyFile(file("TestFile.txt"), new File(dir, "TestFile.txt"));
+      // large enough to be spooled into a temporary file
+      OutputStream out = new FileOutputStream(new File(dir, "large.txt"));
+      try {
+        for (int i = 0; i < 200000; i++) {
+          out.write(("line " + i + "\n").getBytes());
+        }
+      }
+      finally {
+        IOUtils.closeQuietly(out);
+      }
+
+      ZipUtil.pack(dir, serial, IdentityNameMapper.INSTANCE, Deflater.DEFAULT_COMPRESSION);
+      ZipUtil.pack(dir, parallel, IdentityNameMapper.INSTANCE, Deflater.DEFAULT_COMPRESSION, executor);
+
+      assertTrue(ZipUtil.containsEntry(parallel, "large.txt"));
+      assertTrue(FileUtils.contentEquals(serial, parallel));
+    }
+    finally {
+      executor.shutdown();
+      FileUtils.deleteQuietly(dir);
+      FileUtils.deleteQuietly(serial);
+      FileUtils.deleteQuietly(parallel);
+    }
+  }
+
+  public void testPackDeduplicated() throws Exception {
+    File dir = File.createTempFile("tempDir", null);
+    File plain = File.createTempFile("temp", ".zip");
+    File deduplicated = File.createTempFile("temp", ".zip");
+    try {
+      FileUtils.forceDelete(dir);
+      FileUtils.copyDirectory(file("testDirectory"), dir);
+      File original = new File(dir, "TestFile.txt");
+      FileUtils.copyFile(file("TestFile.txt"), original);
+      FileUtils.copyFile(original, new File(dir, "a/copy1.txt"));
+      FileUtils.copyFile(original, new File(dir, "a/b/copy2.txt"));
+      // same size, other contents
+      byte[] data = readFile(original);
+      data[0]++;
+      OutputStream out = new FileOutputStream(new File(dir, "a/other.txt"));
+      try {
+        out.write(data);
+      }
+      finally {
+        IOUtils.closeQuietly(out);
+      }
+
+      ZipUtil.pack(dir, plain);
+      ZipUtil.packDeduplicated(dir, deduplicated);
+
+      assertTrue(ZipUtil.archiveEquals(plain, deduplicated));
+      assertTrue(Arrays.equals(readFile(original), ZipUtil.unpackEntry(deduplicated, "a/b/copy2.txt")));
+      assertTrue(Arrays.equals(data, ZipUtil.unpackEntry(deduplicated, "a/other.txt")));
+      ZipFile zf = new ZipFile(deduplicated);
+      try {
+        ZipEntry copy = zf.getEntry("a/copy1.txt");
+        assertEquals(zf.getEntry("TestFile.txt").getCrc(), copy.getCrc());
+        assertEquals(zf.getEntry("TestFile.txt").getCompressedSize(), copy.getCompressedSize());
+      }
+      finally {
+        zf.close();
+      }
+    }
+    finally {
+      FileUtils.deleteQuietly(dir);
+      FileUtils.deleteQuietly(plain);
+      FileUtils.deleteQuietly(deduplicated);
+    }
+  }
+
+  public void testPackIncrementalIsSameAsFull() throws Exception {
+    File dir = File.createTempFile("tempDir", null);
+    File previous = File.createTempFile("temp", ".zip");
+    File incremental = File.createTempFile("temp", ".zip");
+    File full = File.createTempFile("temp", ".zip");
+    try {
+      FileUtils.forceDelete(dir);
+      FileUtils.copyDirectory(file("testDirectory"), dir);
+      File changed = new File(dir, "TestFile.txt");
+      FileUtils.copyFile(file("TestFile.txt"), changed);
+      ZipUtil.pack(dir, previous);
+
+      OutputStream out = new FileOutputStream(changed, true);
+      try {
+        out.write("more".getBytes());
+      }
+      finally {
+        IOUtils.closeQuietly(out);
+      }
+      changed.setLastModified(changed.lastModified() + 10000);
+      FileUtils.copyFile(file("TestFile-II.txt"), new File(dir, "added.txt"));
+
+      ZipUtil.packIncremental(dir, incremental, previous);
+      ZipUtil.pack(dir, full);
+      assertTrue(FileUtils.contentEquals(full, incremental));
+      assertTrue(new String(ZipUtil.unpackEntry(incremental, "TestFile.txt")).endsWith("more"));
+
+      // the previous archive is replaced
+      ZipUtil.packIncremental(dir, previous, previous);
+      assertTrue(FileUtils.contentEquals(full, previous));
+    }
+    finally {
+      FileUtils.deleteQuietly(dir);
+      FileUtils.deleteQuietly(previous);
+      FileUtils.deleteQuietly(incremental);
+      FileUtils.deleteQuietly(full);
+    }
+  }
+
+  public void testUnpackWithExecutor() throws Exception {
+    final File src = file("demo-dirs.zip");
+    final File dir = File.createTempFile("tempDir", null);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      FileUtils.forceDelete(dir);
+      ZipUtil.unpack(src, dir, IdentityNameMapper.INSTANCE, executor);
+
+      ZipUtil.iterate(src, new ZipEntryCallback() {
+        public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+          File file = new File(dir, zipEntry.getName());
+          if (zipEntry.isDirectory()) {
+            assertTrue(file.isDirectory());
+          }
+          else {
+            assertTrue(Arrays.equals(IOUtils.toByteArray(in), readFile(file)));
+          }
+        }
+      });
+    }
+    finally {
+      executor.shutdown();
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  public void testUnpackStoredEntries() throws Exception {
+    byte[] data = new byte[2 * 1024 * 1024];
+    new Random(1).nextBytes(data);
+    CRC32 crc = new CRC32();
+    crc.update(data);
+
+    File src = File.createTempFile("temp", ".zip");
+    File dir = File.createTempFile("tempDir", null);
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(src));
+    try {
+      ZipEntry entry = new ZipEntry("media/stored.bin");
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(data.length);
+      entry.setCrc(crc.getValue());
+      out.putNextEntry(entry);
+      out.write(data);
+      out.closeEntry();
+    }
+    finally {
+      out.close();
+    }
+    try {
+      FileUtils.forceDelete(dir);
+      ZipUtil.unpack(src, dir);
+      assertTrue(Arrays.equals(data, readFile(new File(dir, "media/stored.bin"))));
+
+      File file = new File(dir, "single.bin");
+      assertTrue(ZipUtil.unpackEntry(src, "media/stored.bin", file));
+      assertTrue(Arrays.equals(data, readFile(file)));
+
+      // corrupt the entry data
+      RandomAccessFile raf = new RandomAccessFile(src, "rw");
+      try {
+        raf.seek(1000);
+        raf.write(raf.read() ^ 0xff);
+      }
+      finally {
+        raf.close();
+      }
+      ZipUtil.setVerifyTransferredEntries(true);
+      try {
+        ZipUtil.unpack(src, dir);
+        fail("Corrupted entry was unpacked");
+      }
+      catch (ZipException e) {
+        // expected
+      }
+    }
+    finally {
+      ZipUtil.setVerifyTransferredEntries(false);
+      FileUtils.deleteQuietly(src);
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      return IOUtils.toByteArray(in);
+    }
+    finally {
+      in.close();
+    }
+  }
+
   public void testPackEntriesWithNameMapper() throws Exception {
     File fileToPack = file("TestFile.txt");
     File fileToPackII = file("TestFile-II.txt");
@@ -348,6 +682,130 @@ public class ZipUtilTest extends TestCase {
     assertTrue(ZipUtil.archiveEquals(src, src3));
   }
 
+  public void testArchiveEqualsParallel() throws IOException {
+    File src = file("demo.zip");
+    File repacked = File.createTempFile("temp", null);
+    File changed = File.createTempFile("temp", null);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      ZipUtil.repack(src, repacked, Deflater.BEST_COMPRESSION);
+      FileUtils.copyFile(src, changed);
+      ZipUtil.replaceEntry(changed, "foo.txt", "changed".getBytes());
+
+      assertTrue(ZipUtil.archiveEquals(src, repacked, executor, false));
+      assertTrue(ZipUtil.archiveEquals(src, repacked, executor, true));
+      assertTrue(ZipUtil.archiveEquals(src, repacked, null, true));
+      assertTrue(ZipUtil.archiveEquals(src, file("demo-copy-II.zip"), executor, false));
+      assertFalse(ZipUtil.archiveEquals(src, changed, executor, false));
+      assertFalse(ZipUtil.archiveEquals(src, changed, null, true));
+    }
+    finally {
+      executor.shutdown();
+      FileUtils.deleteQuietly(repacked);
+      FileUtils.deleteQuietly(changed);
+    }
+  }
+
+  public void testArchiveEqualsParallelWithForgedCrc() throws IOException {
+    File src = File.createTempFile("temp", null);
+    File forged = File.createTempFile("temp", null);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(src));
+      try {
+        for (int i = 0; i < 4; i++) {
+          putStoredEntry(out, "same" + i + ".txt", ("same contents " + i).getBytes());
+        }
+        putStoredEntry(out, "forged.txt", "original contents".getBytes());
+      }
+      finally {
+        IOUtils.closeQuietly(out);
+      }
+
+      // change the stored data but keep the size and CRC of the headers
+      FileUtils.copyFile(src, forged);
+      byte[] original = "original contents".getBytes();
+      byte[] bytes = readFile(forged);
+      int offset = indexOf(bytes, original);
+      assertTrue(offset > 0);
+      RandomAccessFile raf = new RandomAccessFile(forged, "rw");
+      try {
+        raf.seek(offset);
+        raf.write("ORIGINAL contents".getBytes());
+      }
+      finally {
+        raf.close();
+      }
+
+      assertFalse(ZipUtil.archiveEquals(src, forged, executor, false));
+      assertFalse(ZipUtil.archiveEquals(src, forged, null, false));
+      assertTrue(ZipUtil.archiveEquals(src, forged, executor, true));
+    }
+    finally {
+      executor.shutdown();
+      FileUtils.deleteQuietly(src);
+      FileUtils.deleteQuietly(forged);
+    }
+  }
+
+  private static void putStoredEntry(ZipOutputStream out, String name, byte[] data) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(data.length);
+    entry.setCompressedSize(data.length);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(data);
+    out.closeEntry();
+  }
+
+  private static int indexOf(byte[] bytes, byte[] pattern) {
+    for (int i = 0; i + pattern.length <= bytes.length; i++) {
+      int j = 0;
+      while (j < pattern.length && bytes[i + j] == pattern[j]) {
+        j++;
+      }
+      if (j == pattern.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public void testDiff() throws IOException {
+    File f1 = File.createTempFile("temp", null);
+    File f2 = File.createTempFile("temp", null);
+    try {
+      long time = 1400000000000L;
+      ZipUtil.pack(new ZipEntrySource[] {
+          new ByteSource("same.txt", "same".getBytes(), time),
+          new ByteSource("content.txt", "old".getBytes(), time),
+          new ByteSource("removed.txt", "removed".getBytes(), time),
+          new ByteSource("time.txt", "time".getBytes(), time) }, f1);
+      ZipUtil.pack(new ZipEntrySource[] {
+          new ByteSource("same.txt", "same".getBytes(), time),
+          new ByteSource("content.txt", "new".getBytes(), time),
+          new ByteSource("time.txt", "time".getBytes(), time + 60000),
+          new ByteSource("added.txt", "added".getBytes(), time) }, f2);
+
+      ZipDiff diff = ZipUtil.diff(f1, f2);
+      assertEquals(Collections.singleton("added.txt"), diff.getAdded());
+      assertEquals(Collections.singleton("removed.txt"), diff.getRemoved());
+      assertEquals(Collections.singleton("content.txt"), diff.getContentModified());
+      assertEquals(Collections.singleton("time.txt"), diff.getMetadataModified());
+      assertFalse(diff.isEmpty());
+
+      assertTrue(ZipUtil.diff(f1, f1).isEmpty());
+      assertTrue(ZipUtil.diff(f2, f2, true).isEmpty());
+    }
+    finally {
+      FileUtils.deleteQuietly(f1);
+      FileUtils.deleteQuietly(f2);
+    }
+  }
+
   public void testRepackArchive() throws IOException {
     File src = file("demo.zip");
     File dest = File.createTempFile("temp", null);
@@ -416,6 +874,190 @@ public class ZipUtilTest extends TestCase {
     }
   }
 
+  public void testRemoveEntryKeepsCompressedData() throws IOException {
+    File src = File.createTempFile("temp", ".zip");
+    File dest = File.createTempFile("temp", ".zip");
+    try {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 1000; i++) {
+        sb.append("Hello world ").append(i % 7).append('\n');
+      }
+      byte[] content = sb.toString().getBytes("UTF-8");
+
+      // compress with a level that the copy would not use
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(src));
+      out.setLevel(1);
+      out.putNextEntry(new ZipEntry("foo.txt"));
+      out.write(content);
+      out.closeEntry();
+      out.putNextEntry(new ZipEntry("bar.txt"));
+      out.write(content);
+      out.closeEntry();
+      out.close();
+
+      ZipUtil.removeEntry(src, "bar.txt", dest);
+
+      ZipFile srcZip = new ZipFile(src);
+      ZipFile destZip = new ZipFile(dest);
+      try {
+        ZipEntry srcEntry = srcZip.getEntry("foo.txt");
+        ZipEntry destEntry = destZip.getEntry("foo.txt");
+        assertEquals(srcEntry.getCompressedSize(), destEntry.getCompressedSize());
+        assertEquals(srcEntry.getCrc(), destEntry.getCrc());
+        assertEquals(srcEntry.getTime(), destEntry.getTime());
+        assertNull(destZip.getEntry("bar.txt"));
+      }
+      finally {
+        ZipUtil.closeQuietly(srcZip);
+        ZipUtil.closeQuietly(destZip);
+      }
+      assertTrue(Arrays.equals(content, ZipUtil.unpackEntry(dest, "foo.txt")));
+    }
+    finally {
+      FileUtils.deleteQuietly(src);
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
+  public void testRemoveEntryKeepsZip64DataDescriptor() throws IOException {
+    File src = File.createTempFile("temp", ".zip");
+    File dest = File.createTempFile("temp", ".zip");
+    try {
+      byte[] content = "Hello world".getBytes("UTF-8");
+      byte[] deflated = deflate(content);
+      CRC32 crc = new CRC32();
+      crc.update(content);
+
+      // like streaming writers, give a small entry a ZIP64 extra and a ZIP64 data descriptor
+      ByteArrayOutputStream zip = new ByteArrayOutputStream();
+      ByteArrayOutputStream cen = new ByteArrayOutputStream();
+      byte[] zip64Extra = new byte[20];
+      zip64Extra[0] = 1;
+      zip64Extra[2] = 16;
+      writeLocalHeader(zip, "foo.txt", 8, ZipEntry.DEFLATED, 0, 0xFFFFFFFFL, 0xFFFFFFFFL, zip64Extra);
+      zip.write(deflated);
+      writeInt(zip, 0x08074b50L);
+      writeInt(zip, crc.getValue());
+      writeLong(zip, deflated.length);
+      writeLong(zip, content.length);
+      writeCentralHeader(cen, "foo.txt", 8, ZipEntry.DEFLATED, crc.getValue(), deflated.length, content.length, 0);
+      String[] others = { "bar.txt", "baz.txt" };
+      for (int i = 0; i < others.length; i++) {
+        long offset = zip.size();
+        writeLocalHeader(zip, others[i], 0, ZipEntry.STORED, crc.getValue(), content.length, content.length, new byte[0]);
+        zip.write(content);
+        writeCentralHeader(cen, others[i], 0, ZipEntry.STORED, crc.getValue(), content.length, content.length, offset);
+      }
+      long cenOffset = zip.size();
+      cen.writeTo(zip);
+      writeInt(zip, 0x06054b50L);
+      writeInt(zip, 0);
+      writeShort(zip, 3);
+      writeShort(zip, 3);
+      writeInt(zip, cen.size());
+      writeInt(zip, cenOffset);
+      writeShort(zip, 0);
+      OutputStream out = new FileOutputStream(src);
+      try {
+        zip.writeTo(out);
+      }
+      finally {
+        out.close();
+      }
+
+      ZipUtil.removeEntry(src, "baz.txt", dest);
+
+      // the stream reader relies on the copied data descriptor to find the next entry
+      final Set<String> names = new HashSet<String>();
+      InputStream in = new FileInputStream(dest);
+      try {
+        ZipUtil.iterate(in, new String[] { "foo.txt", "bar.txt" }, new ZipEntryCallback() {
+          public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+            assertEquals("Hello world", new String(IOUtils.toByteArray(in), "UTF-8"));
+            names.add(zipEntry.getName());
+          }
+        });
+      }
+      finally {
+        in.close();
+      }
+      assertEquals(new HashSet<String>(Arrays.asList("foo.txt", "bar.txt")), names);
+    }
+    finally {
+      FileUtils.deleteQuietly(src);
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
+  private static byte[] deflate(byte[] content) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(content);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return out.toByteArray();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  private static void writeLocalHeader(ByteArrayOutputStream out, String name, int flag, int method,
+      long crc, long compressedSize, long size, byte[] extra) throws IOException {
+    writeInt(out, 0x04034b50L);
+    writeShort(out, 45);
+    writeShort(out, flag);
+    writeShort(out, method);
+    writeInt(out, 0);
+    writeInt(out, crc);
+    writeInt(out, compressedSize);
+    writeInt(out, size);
+    writeShort(out, name.length());
+    writeShort(out, extra.length);
+    out.write(name.getBytes("UTF-8"));
+    out.write(extra);
+  }
+
+  private static void writeCentralHeader(ByteArrayOutputStream out, String name, int flag, int method,
+      long crc, long compressedSize, long size, long offset) throws IOException {
+    writeInt(out, 0x02014b50L);
+    writeShort(out, 45);
+    writeShort(out, 45);
+    writeShort(out, flag);
+    writeShort(out, method);
+    writeInt(out, 0);
+    writeInt(out, crc);
+    writeInt(out, compressedSize);
+    writeInt(out, size);
+    writeShort(out, name.length());
+    writeShort(out, 0);
+    writeShort(out, 0);
+    writeShort(out, 0);
+    writeShort(out, 0);
+    writeInt(out, 0);
+    writeInt(out, offset);
+    out.write(name.getBytes("UTF-8"));
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int v) {
+    out.write(v & 0xff);
+    out.write((v >>> 8) & 0xff);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, long v) {
+    writeShort(out, (int) (v & 0xffff));
+    writeShort(out, (int) ((v >>> 16) & 0xffff));
+  }
+
+  private static void writeLong(ByteArrayOutputStream out, long v) {
+    writeInt(out, v & 0xFFFFFFFFL);
+    writeInt(out, v >>> 32);
+  }
+
   public void testRemoveMissingEntry() throws IOException {
     File src = file("demo.zip");
     assertFalse("Source zip contains entry 'missing.txt'", ZipUtil.containsEntry(src, "missing.txt"));
@@ -448,6 +1090,23 @@ public class ZipUtilTest extends TestCase {
     }
   }
 
+  public void testRemoveDirsWithSeparator() throws IOException {
+    File src = file("demo-dirs.zip");
+
+    File dest = File.createTempFile("temp", null);
+    try {
+      ZipUtil.removeEntries(src, new String[] { "a/b/" }, dest);
+
+      assertFalse("Result zip still contains dir 'a/b/'", ZipUtil.containsEntry(dest, "a/b/"));
+      assertFalse("Entry in a removed dir is still there: 'a/b/c.txt'", ZipUtil.containsEntry(dest, "a/b/c.txt"));
+      assertTrue("Entry whose prefix is dir name is removed too: 'b.txt'", ZipUtil.containsEntry(dest, "a/b.txt"));
+      assertTrue("Result doesn't contain 'bar.txt'", ZipUtil.containsEntry(dest, "bar.txt"));
+    }
+    finally {
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
   public void testHandle() {
     File src = file("demo.zip");
 
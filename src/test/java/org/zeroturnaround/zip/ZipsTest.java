@@ -21,9 +21,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -570,6 +573,44 @@ public class ZipsTest extends TestCase {
     assertEquals(103, (new File(dest, "TestFile-II.txt")).length());
   }
 
+  public void testCopyWithNameMapper() throws IOException {
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    File dest = File.createTempFile("temp", ".zip");
+    try {
+      Zips.get(src).destination(dest).nameMapper(new NameMapper() {
+        public String map(String name) {
+          return "doc/" + name;
+        }
+      }).process();
+
+      assertTrue(ZipUtil.containsEntry(dest, "doc/foo.txt"));
+      assertFalse(ZipUtil.containsEntry(dest, "foo.txt"));
+      assertTrue(Arrays.equals(ZipUtil.unpackEntry(src, "foo.txt"), ZipUtil.unpackEntry(dest, "doc/foo.txt")));
+    }
+    finally {
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
+  public void testAddFileWithExecutor() throws IOException {
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    File serial = File.createTempFile("temp", ".zip");
+    File parallel = File.createTempFile("temp", ".zip");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Zips.get(src).destination(serial).preserveTimestamps().addFile(new File("src/test/resources/testDirectory"), true).process();
+      Zips.get(src).destination(parallel).preserveTimestamps().addFile(new File("src/test/resources/testDirectory"), true).executor(executor).process();
+
+      assertTrue(ZipUtil.containsEntry(parallel, "foo.txt"));
+      assertTrue(FileUtils.contentEquals(serial, parallel));
+    }
+    finally {
+      executor.shutdown();
+      FileUtils.deleteQuietly(serial);
+      FileUtils.deleteQuietly(parallel);
+    }
+  }
+
   public void testUnpack() throws IOException {
     File src = new File(MainExamplesTest.DEMO_ZIP);
 
@@ -584,6 +625,26 @@ public class ZipsTest extends TestCase {
     });
   }
 
+  public void testUnpackWithExecutor() throws IOException {
+    File src = new File(MainExamplesTest.DEMO_ZIP);
+    final File dest = File.createTempFile("temp", null);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Zips.get(src).unpack().destination(dest).addEntry(new ByteSource("new.txt", "new".getBytes())).executor(executor).process();
+      assertTrue(dest.isDirectory());
+      ZipUtil.iterate(src, new ZipEntryCallback() {
+        public void process(InputStream in, ZipEntry zipEntry) throws IOException {
+          assertEquals(zipEntry.getSize(), new File(dest, zipEntry.getName()).length());
+        }
+      });
+      assertEquals(3, new File(dest, "new.txt").length());
+    }
+    finally {
+      executor.shutdown();
+      FileUtils.deleteQuietly(dest);
+    }
+  }
+
   public void testUnpackInPlace() throws IOException {
     File original = new File(MainExamplesTest.DEMO_ZIP);
     final File src = File.createTempFile("temp", null);
@@ -643,4 +704,27 @@ public class ZipsTest extends TestCase {
       FileUtils.deleteQuietly(dest);
     }
   }
+
+  public void testUnpackWithFailingTransformer() throws IOException {
+    File src = new File("src/test/resources/demo-dirs.zip");
+    File dest = File.createTempFile("temp", null);
+    FileUtils.deleteQuietly(dest);
+    try {
+      ZipEntryTransformer transformer = new ByteArrayZipEntryTransformer() {
+        protected byte[] transform(ZipEntry zipEntry, byte[] input) throws IOException {
+          throw new IOException("Transformation failed");
+        }
+      };
+      try {
+        Zips.get(src).unpack().addTransformer("attic/treasure.txt", transformer).destination(dest).process();
+        fail("The transformer failed");
+      }
+      catch (ZipException e) {
+        assertEquals("Transformation failed", e.getCause().getMessage());
+      }
+    }
+    finally {
+      FileUtils.deleteQuietly(dest);
+    }
+  }
 }